@@ -0,0 +1,51 @@
+package com.statsim.benchmarks;
+
+import com.statsim.objectsfirst.FieldStats;
+import com.statsim.objectsfirst.Randomizer;
+import com.statsim.objectsfirst.Simulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the population census done by FieldStats every step: reading
+ * the population details and checking viability.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CensusBenchmark {
+
+    @Param({"100", "500", "2000"})
+    private int size;
+
+    private Simulator simulator;
+
+    private FieldStats stats;
+
+    @Setup
+    public void setUp() {
+        Randomizer.reset();
+        simulator = Simulator.headless(size, size);
+        stats = new FieldStats();
+    }
+
+    @Benchmark
+    public boolean census() {
+        stats.getPopulationDetails(simulator.getField());
+        return stats.isViable(simulator.getField());
+    }
+}
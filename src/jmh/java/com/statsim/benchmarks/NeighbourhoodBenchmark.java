@@ -0,0 +1,94 @@
+package com.statsim.benchmarks;
+
+import com.statsim.objectsfirst.Field;
+import com.statsim.objectsfirst.Location;
+import com.statsim.objectsfirst.NeighbourCursor;
+import com.statsim.objectsfirst.SplitMixRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the neighbourhood queries of Field, on a field filled to a
+ * given density. Each operation queries the next cell of a fixed,
+ * random sequence of cells, so the benchmark is not dominated by one
+ * cell staying in cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeighbourhoodBenchmark {
+
+    private static final int SIZE = 500;
+
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"0.1", "0.5", "0.9"})
+    private double density;
+
+    private Field field;
+
+    private int[] cells;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SplitMixRandom rand = new SplitMixRandom(42);
+        field = new Field(SIZE, SIZE);
+        Object occupant = new Object();
+        for (int cell = 0; cell < field.getCellCount(); cell++) {
+            if (rand.nextDouble() < density) {
+                field.place(occupant, cell);
+            }
+        }
+        cells = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            cells[i] = rand.nextInt(field.getCellCount());
+        }
+    }
+
+    private int nextCell() {
+        next = (next + 1) & (QUERIES - 1);
+        return cells[next];
+    }
+
+    @Benchmark
+    public List<Location> adjacentLocations() {
+        return field.adjacentLocations(field.getLocation(nextCell()));
+    }
+
+    @Benchmark
+    public Location freeAdjacentLocation() {
+        return field.freeAdjacentLocation(field.getLocation(nextCell()));
+    }
+
+    @Benchmark
+    public int freeAdjacentCell() {
+        return field.freeAdjacentCell(nextCell());
+    }
+
+    @Benchmark
+    public int adjacentCells() {
+        NeighbourCursor adjacent = field.adjacentCells(nextCell());
+        int sum = 0;
+        while (adjacent.hasNext()) {
+            sum += adjacent.next();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,70 @@
+package com.statsim.benchmarks;
+
+import com.statsim.objectsfirst.PackedSimulator;
+import com.statsim.objectsfirst.Randomizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of one tiled step of the packed engine on large grids, by number
+ * of threads, to measure how parallel stepping scales. Every thread
+ * count runs the same tiled algorithm and follows the same course. As in
+ * StepBenchmark, every iteration times a batch of HORIZON steps from a
+ * fresh start. A batch on a large grid takes minutes on one thread, so
+ * there are fewer iterations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, batchSize = StepBenchmark.HORIZON)
+@Measurement(iterations = 3, batchSize = StepBenchmark.HORIZON)
+@Fork(1)
+public class ParallelStepBenchmark {
+
+    @Param({"2000", "4000"})
+    private int size;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private PackedSimulator simulator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        simulator = new PackedSimulator(size, size);
+        simulator.setTiled(true);
+        simulator.setParallelism(threads);
+    }
+
+    @Setup(Level.Iteration)
+    public void restart() {
+        Randomizer.reset();
+        simulator.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        simulator.setTiled(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(StepBenchmark.HORIZON)
+    public int simulateOneStep() {
+        simulator.simulateOneStep();
+        return simulator.getStep();
+    }
+}
@@ -0,0 +1,61 @@
+package com.statsim.benchmarks;
+
+import com.statsim.objectsfirst.PackedSimulator;
+import com.statsim.objectsfirst.Randomizer;
+import com.statsim.objectsfirst.Simulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to reset a simulation, which clears the field and populates it
+ * again at random, for both engines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PopulateBenchmark {
+
+    @Param({"100", "500", "2000"})
+    private int size;
+
+    @Param({"object", "packed"})
+    private String engine;
+
+    private Simulator simulator;
+
+    private PackedSimulator packedSimulator;
+
+    @Setup
+    public void setUp() {
+        Randomizer.reset();
+        if (engine.equals("object")) {
+            simulator = Simulator.headless(size, size);
+        } else {
+            packedSimulator = new PackedSimulator(size, size);
+        }
+    }
+
+    @Benchmark
+    public void populate() {
+        Randomizer.reset();
+        if (simulator != null) {
+            simulator.reset();
+        } else {
+            packedSimulator.reset();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.statsim.benchmarks;
+
+import com.statsim.objectsfirst.HeadlessView;
+import com.statsim.objectsfirst.PackedSimulator;
+import com.statsim.objectsfirst.Randomizer;
+import com.statsim.objectsfirst.SimulationParameters;
+import com.statsim.objectsfirst.Simulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of one simulation step, for both engines, on square grids of
+ * several sizes. Every iteration times a batch of HORIZON steps from a
+ * freshly populated field with the fixed seed, so the measurement
+ * covers the same stretch of population history from one run of the
+ * benchmark to the next, and never an extinct field. The score is the
+ * mean time per step of the batch; populating the field is not timed.
+ *
+ * The "scheduled" engine is the packed engine with deaths from old
+ * age and starvation scheduled on a timing wheel.
+ *
+ * The density scales the starting density of both species, to compare
+ * sparse fields, the default and crowded ones; for instance
+ * "-p density=1" keeps to the default.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, batchSize = StepBenchmark.HORIZON)
+@Measurement(iterations = 5, batchSize = StepBenchmark.HORIZON)
+@Fork(1)
+public class StepBenchmark {
+
+    // The number of steps simulated from each fresh start.
+    static final int HORIZON = 50;
+
+    @Param({"100", "500", "2000"})
+    private int size;
+
+    @Param({"object", "packed", "scheduled"})
+    private String engine;
+
+    @Param({"0.25", "1", "4"})
+    private double density;
+
+    private Simulator simulator;
+
+    private PackedSimulator packedSimulator;
+
+    @Setup(Level.Iteration)
+    public void restart() {
+        SimulationParameters defaults = SimulationParameters.DEFAULT;
+        SimulationParameters parameters = defaults.withCreationProbabilities(
+                defaults.getHawkCreationProbability() * density,
+                defaults.getSquirrelCreationProbability() * density);
+        if (engine.equals("object")) {
+            simulator = Simulator.headless(size, size, parameters, Randomizer.getSeed());
+        } else {
+            packedSimulator = new PackedSimulator(size, size, new HeadlessView(),
+                    parameters, Randomizer.getSeed());
+            packedSimulator.setScheduledDeaths(engine.equals("scheduled"));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HORIZON)
+    public int simulateOneStep() {
+        if (simulator != null) {
+            simulator.simulateOneStep();
+            return simulator.getStep();
+        }
+        packedSimulator.simulateOneStep();
+        return packedSimulator.getStep();
+    }
+}
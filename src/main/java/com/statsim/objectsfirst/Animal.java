@@ -13,8 +13,10 @@ public abstract class Animal
     private boolean alive;
     // The animal's field.
     private Field field;
-    // The animal's position in the field.
-    private Location location;
+    // The index of the animal's cell in the field, or -1 once dead.
+    private int cell;
+    // The metrics of the simulation, kept after death.
+    private final StepMetrics metrics;
     
     /**
      * Create a new animal at location in field.
@@ -23,10 +25,23 @@ public abstract class Animal
      * @param location The location within the field.
      */
     public Animal(Field field, Location location)
+    {
+        this(field, field.indexOf(location));
+    }
+
+    /**
+     * Create a new animal in a cell of the field.
+     * 
+     * @param field The field currently occupied.
+     * @param cell The index of the cell within the field.
+     */
+    public Animal(Field field, int cell)
     {
         alive = true;
         this.field = field;
-        setLocation(location);
+        this.metrics = field.getMetrics();
+        this.cell = -1;
+        setCell(cell);
     }
     
     /**
@@ -52,20 +67,57 @@ public abstract class Animal
     protected void setDead()
     {
         alive = false;
-        if(location != null) {
-            field.clear(location);
-            location = null;
+        if(cell >= 0) {
+            field.getEvents().death(field.getSpeciesAt(cell));
+            field.clear(cell);
+            cell = -1;
             field = null;
         }
     }
 
+    /**
+     * Indicate that the animal has died of old age.
+     */
+    protected void dieOfOldAge()
+    {
+        if(cell >= 0) {
+            field.getEvents().oldAge(field.getSpeciesAt(cell));
+        }
+        setDead();
+    }
+
+    /**
+     * Indicate that the animal has starved.
+     */
+    protected void dieOfStarvation()
+    {
+        if(cell >= 0) {
+            field.getEvents().starvation(field.getSpeciesAt(cell));
+        }
+        setDead();
+    }
+
+    /**
+     * Indicate that the animal has died because it had nowhere to move.
+     */
+    protected void dieOfOvercrowding()
+    {
+        if(cell >= 0) {
+            field.getEvents().overcrowding(field.getSpeciesAt(cell));
+        }
+        setDead();
+    }
+
     /**
      * Return the animal's location.
-     * @return The animal's location.
+     * @return The animal's location, or null if it is dead.
      */
     protected Location getLocation()
     {
-        return location;
+        if(cell < 0) {
+            return null;
+        }
+        return field.getLocation(cell);
     }
     
     /**
@@ -74,13 +126,44 @@ public abstract class Animal
      */
     protected void setLocation(Location newLocation)
     {
-        if(location != null) {
-            field.clear(location);
+        setCell(field.indexOf(newLocation));
+    }
+
+    /**
+     * Return the index of the animal's cell in the field.
+     * @return The animal's cell, or -1 if it is dead.
+     */
+    protected int getCell()
+    {
+        return cell;
+    }
+
+    /**
+     * Move the animal to a new cell in the given field.
+     * @param newCell The index of the animal's new cell.
+     */
+    protected void setCell(int newCell)
+    {
+        if(cell >= 0) {
+            field.move(cell, newCell);
+        }
+        else {
+            field.place(this, newCell);
         }
-        location = newLocation;
-        field.place(this, newLocation);
+        cell = newCell;
     }
     
+    /**
+     * Return the metrics of the simulation the animal belongs to, in
+     * which it times what it does. Unlike the field, these are still
+     * available once the animal is dead.
+     * @return The metrics.
+     */
+    protected StepMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     /**
      * Return the animal's field.
      * @return The animal's field.
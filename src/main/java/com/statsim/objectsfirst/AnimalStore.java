@@ -0,0 +1,306 @@
+package com.statsim.objectsfirst;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A compact store of animals. Instead of one object per animal, the
+ * characteristics of every animal are kept in parallel arrays of
+ * primitives, and an animal is identified by its index (its handle)
+ * into those arrays.
+ *
+ * Animals that die are only marked as dead. They are removed, and the
+ * remaining animals moved down to fill the gaps, by compact().
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class AnimalStore
+{
+    // The species code used for an animal that has died.
+    public static final byte DEAD = 0;
+    // The number of animals to make room for initially.
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The species code of each animal.
+    private byte[] species;
+    // The age of each animal.
+    private int[] age;
+    // The food level of each animal.
+    private int[] foodLevel;
+    // The index of the field cell each animal occupies.
+    private int[] cell;
+    // The number of animals, dead or alive, in the store.
+    private int size;
+
+    /**
+     * Create an empty store.
+     */
+    public AnimalStore()
+    {
+        species = new byte[INITIAL_CAPACITY];
+        age = new int[INITIAL_CAPACITY];
+        foodLevel = new int[INITIAL_CAPACITY];
+        cell = new int[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Add an animal to the end of the store.
+     * @param speciesCode The animal's species. Must not be DEAD.
+     * @param animalAge The animal's age.
+     * @param food The animal's food level.
+     * @param cellIndex The field cell the animal occupies.
+     * @return The handle of the new animal.
+     */
+    public int add(int speciesCode, int animalAge, int food, int cellIndex)
+    {
+        if(size == species.length) {
+            grow();
+        }
+        species[size] = (byte) speciesCode;
+        age[size] = animalAge;
+        foodLevel[size] = food;
+        cell[size] = cellIndex;
+        return size++;
+    }
+
+    /**
+     * Remove the dead animals, keeping the living ones in their
+     * current order. The handles of the survivors change; the
+     * handles held by the given field are updated to match.
+     * @param field The field the animals occupy.
+     */
+    public void compact(Field field)
+    {
+        compact(field, null);
+    }
+
+    /**
+     * Remove the dead animals, keeping the living ones in their
+     * current order, and record where each animal went, for callers
+     * that hold handles of their own.
+     * @param field The field the animals occupy.
+     * @param newHandles If not null, receives the new handle of each
+     *                   animal, indexed by its old handle, or -1 for
+     *                   an animal that was dead. It must have room for
+     *                   size() handles.
+     */
+    public void compact(Field field, int[] newHandles)
+    {
+        int alive = 0;
+        for(int handle = 0; handle < size; handle++) {
+            if(species[handle] != DEAD) {
+                if(alive != handle) {
+                    species[alive] = species[handle];
+                    age[alive] = age[handle];
+                    foodLevel[alive] = foodLevel[handle];
+                    cell[alive] = cell[handle];
+                    field.setHandle(cell[alive], alive);
+                }
+                if(newHandles != null) {
+                    newHandles[handle] = alive;
+                }
+                alive++;
+            }
+            else if(newHandles != null) {
+                newHandles[handle] = -1;
+            }
+        }
+        size = alive;
+    }
+
+    /**
+     * Set the number of animals in the store. Animals added this way
+     * are undefined until they are set.
+     * @param count The new number of animals.
+     */
+    void setSize(int count)
+    {
+        while(species.length < count) {
+            grow();
+        }
+        size = count;
+    }
+
+    /**
+     * Set every characteristic of an animal, whose handle must be
+     * below size(). Different threads may set different animals.
+     * @param handle The animal.
+     * @param speciesCode The animal's species.
+     * @param animalAge The animal's age.
+     * @param food The animal's food level.
+     * @param cellIndex The field cell the animal occupies.
+     */
+    void set(int handle, int speciesCode, int animalAge, int food, int cellIndex)
+    {
+        species[handle] = (byte) speciesCode;
+        age[handle] = animalAge;
+        foodLevel[handle] = food;
+        cell[handle] = cellIndex;
+    }
+
+    /**
+     * Copy an animal into another store. Different threads may copy
+     * different animals.
+     * @param handle The animal.
+     * @param target The store to copy it into.
+     * @param targetHandle Its handle in that store, below target.size().
+     */
+    void copyTo(int handle, AnimalStore target, int targetHandle)
+    {
+        target.species[targetHandle] = species[handle];
+        target.age[targetHandle] = age[handle];
+        target.foodLevel[targetHandle] = foodLevel[handle];
+        target.cell[targetHandle] = cell[handle];
+    }
+
+    /**
+     * Remove all animals.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * @return The number of animals, dead or alive, in the store.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param handle The animal.
+     * @return Whether the animal is alive.
+     */
+    public boolean isAlive(int handle)
+    {
+        return species[handle] != DEAD;
+    }
+
+    /**
+     * Mark an animal as dead. Its cell is left to the caller.
+     * @param handle The animal.
+     */
+    public void setDead(int handle)
+    {
+        species[handle] = DEAD;
+    }
+
+    /**
+     * @param handle The animal.
+     * @return The animal's species, or DEAD.
+     */
+    public int getSpecies(int handle)
+    {
+        return species[handle] & 0xff;
+    }
+
+    /**
+     * @param handle The animal.
+     * @return The animal's age.
+     */
+    public int getAge(int handle)
+    {
+        return age[handle];
+    }
+
+    /**
+     * @param handle The animal.
+     * @param animalAge The animal's new age.
+     */
+    public void setAge(int handle, int animalAge)
+    {
+        age[handle] = animalAge;
+    }
+
+    /**
+     * @param handle The animal.
+     * @return The animal's food level.
+     */
+    public int getFoodLevel(int handle)
+    {
+        return foodLevel[handle];
+    }
+
+    /**
+     * @param handle The animal.
+     * @param food The animal's new food level.
+     */
+    public void setFoodLevel(int handle, int food)
+    {
+        foodLevel[handle] = food;
+    }
+
+    /**
+     * @param handle The animal.
+     * @return The field cell the animal occupies.
+     */
+    public int getCell(int handle)
+    {
+        return cell[handle];
+    }
+
+    /**
+     * @param handle The animal.
+     * @param cellIndex The field cell the animal now occupies.
+     */
+    public void setCell(int handle, int cellIndex)
+    {
+        cell[handle] = cellIndex;
+    }
+
+    /**
+     * Copy every animal into the columns of a checkpoint.
+     * @param speciesColumn Receives the species of each animal.
+     * @param ageColumn Receives the age of each animal.
+     * @param foodColumn Receives the food level of each animal.
+     * @param cellColumn Receives the cell of each animal.
+     */
+    void writeTo(ByteBuffer speciesColumn, IntBuffer ageColumn,
+                 IntBuffer foodColumn, IntBuffer cellColumn)
+    {
+        speciesColumn.put(species, 0, size);
+        ageColumn.put(age, 0, size);
+        foodColumn.put(foodLevel, 0, size);
+        cellColumn.put(cell, 0, size);
+    }
+
+    /**
+     * Replace the animals in the store with those in the columns of
+     * a checkpoint.
+     * @param count The number of animals.
+     * @param speciesColumn The species of each animal.
+     * @param ageColumn The age of each animal.
+     * @param foodColumn The food level of each animal.
+     * @param cellColumn The cell of each animal.
+     */
+    void readFrom(int count, ByteBuffer speciesColumn, IntBuffer ageColumn,
+                  IntBuffer foodColumn, IntBuffer cellColumn)
+    {
+        size = 0;
+        while(species.length < count) {
+            grow();
+        }
+        speciesColumn.get(species, 0, count);
+        ageColumn.get(age, 0, count);
+        foodColumn.get(foodLevel, 0, count);
+        cellColumn.get(cell, 0, count);
+        size = count;
+    }
+
+    /**
+     * Double the capacity of the store.
+     */
+    private void grow()
+    {
+        int capacity = species.length * 2;
+        species = Arrays.copyOf(species, capacity);
+        age = Arrays.copyOf(age, capacity);
+        foodLevel = Arrays.copyOf(foodLevel, capacity);
+        cell = Arrays.copyOf(cell, capacity);
+    }
+}
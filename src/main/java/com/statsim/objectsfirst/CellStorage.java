@@ -0,0 +1,58 @@
+package com.statsim.objectsfirst;
+
+/**
+ * The storage behind the cells of a field: a species code and a handle
+ * for every cell, addressed by cell index, row * width + col.
+ *
+ * FlatCellStorage keeps every cell in memory and suits fields that are
+ * mostly occupied. ChunkedCellStorage only keeps the blocks of cells that
+ * have an occupant, and suits large fields that are mostly empty.
+ * OffHeapCellStorage keeps every cell outside the Java heap, in direct
+ * buffers or in a file mapped into memory.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public interface CellStorage
+{
+    /**
+     * Return the species code of the occupant of a cell.
+     * @param cell The index of the cell.
+     * @return The species code, or Field.EMPTY.
+     */
+    int getSpecies(int cell);
+
+    /**
+     * Return the handle of the occupant of a cell.
+     * @param cell The index of the cell.
+     * @return The handle, or 0 if the cell is empty.
+     */
+    int getHandle(int cell);
+
+    /**
+     * Set the species code and handle of a cell.
+     * @param cell The index of the cell.
+     * @param speciesCode The occupant's species code, or Field.EMPTY
+     *                    to empty the cell.
+     * @param handle The occupant's handle; 0 for an empty cell.
+     */
+    void set(int cell, int speciesCode, int handle);
+
+    /**
+     * Change the handle of the occupant of a cell, keeping its species.
+     * @param cell The index of an occupied cell.
+     * @param handle The occupant's new handle.
+     */
+    void setHandle(int cell, int handle);
+
+    /**
+     * Empty every cell.
+     */
+    void clear();
+
+    /**
+     * Return the number of bytes currently taken by the cells.
+     * @return The size of the storage in bytes.
+     */
+    long getAllocatedBytes();
+}
@@ -0,0 +1,335 @@
+package com.statsim.objectsfirst;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A snapshot of the full state of a simulation: the size of the field,
+ * the step, the configuration, the state of the random number
+ * generator, and the species,
+ * age, food level and cell of every animal, in the order in which the
+ * animals act. A simulation restored from a checkpoint carries on
+ * exactly as the original would have.
+ *
+ * A checkpoint is taken by Simulator.checkpoint or
+ * PackedSimulator.checkpoint, which only copy the state into the
+ * checkpoint's buffer. Writing it to a file can then be left to
+ * another thread while the simulation carries on. Checkpoint files are
+ * read by mapping them into memory.
+ *
+ * The snapshot is one little-endian buffer: a header, the names of
+ * the species in the order of their species codes, the number of
+ * animals, then one column per characteristic: a byte for the species
+ * code of each animal, then an int for the age, the food level and the
+ * cell of each animal. A snapshot must fit in 2GB, which is enough for
+ * about 150 million animals.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class Checkpoint
+{
+    // The engine that took a checkpoint.
+    public static final int OBJECTS = 1, PACKED = 2;
+    // The first eight bytes of a checkpoint file, "PPSTATE1".
+    private static final long MAGIC = 0x3145544154535050L;
+    // Where the configuration starts in the header.
+    private static final int PARAMETERS_OFFSET = 48;
+    // The size of the fixed part of the header.
+    private static final int HEADER_SIZE = 112;
+
+    // The snapshot.
+    private final ByteBuffer data;
+    // The engine that took the checkpoint.
+    private final int engine;
+    // The size of the field.
+    private final int depth, width;
+    // The step at which the checkpoint was taken.
+    private final int step;
+    // The state of the random number generator.
+    private final long randomState;
+    // The seed of the random streams of parallel steps.
+    private final long seed;
+    // The configuration of the simulation.
+    private final SimulationParameters parameters;
+    // The classes of the species, indexed by species code minus one.
+    private final String[] species;
+    // The number of animals.
+    private final int animalCount;
+    // Where the animal columns start in the snapshot.
+    private final int columnsStart;
+
+    /**
+     * Create an empty checkpoint, with room for the given number of
+     * animals, for a simulator to fill in.
+     * @param engine OBJECTS or PACKED.
+     * @param field The field being simulated.
+     * @param step The current step.
+     * @param randomState The state of the random number generator.
+     * @param seed The seed of the random streams of parallel steps.
+     * @param parameters The configuration of the simulation.
+     * @param animalCount The number of animals.
+     */
+    Checkpoint(int engine, Field field, int step, long randomState, long seed,
+               SimulationParameters parameters, int animalCount)
+    {
+        this.parameters = parameters;
+        this.engine = engine;
+        this.depth = field.getDepth();
+        this.width = field.getWidth();
+        this.step = step;
+        this.randomState = randomState;
+        this.seed = seed;
+        this.animalCount = animalCount;
+        species = new String[field.getSpeciesCodes() - 1];
+        byte[][] names = new byte[species.length][];
+        int namesSize = 0;
+        for(int code = 1; code <= species.length; code++) {
+            species[code - 1] = field.getSpeciesName(code);
+            names[code - 1] = species[code - 1].getBytes(StandardCharsets.UTF_8);
+            namesSize += 2 + names[code - 1].length;
+        }
+        // Align the int columns on four bytes.
+        columnsStart = (HEADER_SIZE + namesSize + 4 + animalCount + 3) / 4 * 4 - animalCount;
+        long size = (long) columnsStart + animalCount + 3L * 4 * animalCount;
+        if(size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many animals for one checkpoint.");
+        }
+        data = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        data.putLong(MAGIC);
+        data.putInt(engine);
+        data.putInt(depth);
+        data.putInt(width);
+        data.putInt(step);
+        data.putLong(randomState);
+        data.putLong(seed);
+        data.putInt(species.length);
+        data.putInt(columnsStart);
+        data.putDouble(parameters.getHawkCreationProbability());
+        data.putDouble(parameters.getSquirrelCreationProbability());
+        putSpecies(parameters.getHawk());
+        putSpecies(parameters.getSquirrel());
+        for(byte[] name : names) {
+            data.putShort((short) name.length);
+            data.put(name);
+        }
+        data.putInt(animalCount);
+        data.clear();
+    }
+
+    /**
+     * Wrap a snapshot read back from a file.
+     * @param data The snapshot.
+     * @throws IOException If it is not a valid snapshot.
+     */
+    private Checkpoint(ByteBuffer data) throws IOException
+    {
+        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        if(data.limit() < HEADER_SIZE || data.getLong(0) != MAGIC) {
+            throw new IOException("Not a checkpoint.");
+        }
+        engine = data.getInt(8);
+        depth = data.getInt(12);
+        width = data.getInt(16);
+        step = data.getInt(20);
+        randomState = data.getLong(24);
+        seed = data.getLong(32);
+        species = new String[data.getInt(40)];
+        columnsStart = data.getInt(44);
+        data.position(PARAMETERS_OFFSET);
+        double hawkCreationProbability = data.getDouble();
+        double squirrelCreationProbability = data.getDouble();
+        SpeciesParameters hawk = getSpecies();
+        SpeciesParameters squirrel = getSpecies();
+        parameters = new SimulationParameters(hawkCreationProbability, squirrelCreationProbability,
+                                              hawk, squirrel);
+        for(int i = 0; i < species.length; i++) {
+            byte[] name = new byte[data.getShort()];
+            data.get(name);
+            species[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        animalCount = data.getInt();
+        data.clear();
+        long size = (long) columnsStart + animalCount + 3L * 4 * animalCount;
+        if(data.limit() < size) {
+            throw new IOException("The checkpoint is truncated.");
+        }
+    }
+
+    /**
+     * Read a checkpoint from a file.
+     * @param path The file.
+     * @return The checkpoint.
+     * @throws IOException If the file cannot be read or is not a checkpoint.
+     */
+    public static Checkpoint read(String path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return new Checkpoint(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write the checkpoint to a file, replacing it if it exists. This
+     * may be done from any thread, while the simulation carries on.
+     * @param path The file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(String path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = data.duplicate();
+            buffer.clear();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * @return The engine that took the checkpoint, OBJECTS or PACKED.
+     */
+    public int getEngine()
+    {
+        return engine;
+    }
+
+    /**
+     * @return The step at which the checkpoint was taken.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The number of animals in the checkpoint.
+     */
+    public int getAnimalCount()
+    {
+        return animalCount;
+    }
+
+    /**
+     * @return The configuration of the simulation.
+     */
+    public SimulationParameters getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * @return The state of the random number generator.
+     */
+    long getRandomState()
+    {
+        return randomState;
+    }
+
+    /**
+     * @return The seed of the random streams of parallel steps.
+     */
+    long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Check that the checkpoint can be restored into a field, and
+     * register its species in the field.
+     * @param expectedEngine The engine restoring the checkpoint.
+     * @param field The empty field to restore into.
+     * @return The field's species code for each of the checkpoint's
+     *         species codes.
+     */
+    int[] prepare(int expectedEngine, Field field)
+    {
+        if(engine != expectedEngine) {
+            throw new IllegalArgumentException("The checkpoint was taken by another engine.");
+        }
+        if(depth != field.getDepth() || width != field.getWidth()) {
+            throw new IllegalArgumentException("The checkpoint is of a " + depth + "x" + width + " field.");
+        }
+        int[] codes = new int[species.length + 1];
+        for(int code = 1; code <= species.length; code++) {
+            codes[code] = field.registerSpeciesNamed(species[code - 1]);
+        }
+        return codes;
+    }
+
+    /**
+     * @return The species code of each animal.
+     */
+    ByteBuffer speciesColumn()
+    {
+        return column(columnsStart, animalCount);
+    }
+
+    /**
+     * @return The age of each animal.
+     */
+    IntBuffer ageColumn()
+    {
+        return column(columnsStart + animalCount, 4 * animalCount).asIntBuffer();
+    }
+
+    /**
+     * @return The food level of each animal.
+     */
+    IntBuffer foodLevelColumn()
+    {
+        return column(columnsStart + animalCount + 4 * animalCount, 4 * animalCount).asIntBuffer();
+    }
+
+    /**
+     * @return The cell of each animal.
+     */
+    IntBuffer cellColumn()
+    {
+        return column(columnsStart + animalCount + 8 * animalCount, 4 * animalCount).asIntBuffer();
+    }
+
+    /**
+     * Write the characteristics of a species at the current position.
+     */
+    private void putSpecies(SpeciesParameters species)
+    {
+        data.putInt(species.getBreedingAge());
+        data.putInt(species.getMaxAge());
+        data.putDouble(species.getBreedingProbability());
+        data.putInt(species.getMaxLitterSize());
+        data.putInt(species.getFoodValue());
+    }
+
+    /**
+     * Read the characteristics of a species at the current position.
+     */
+    private SpeciesParameters getSpecies()
+    {
+        int breedingAge = data.getInt();
+        int maxAge = data.getInt();
+        double breedingProbability = data.getDouble();
+        int maxLitterSize = data.getInt();
+        int foodValue = data.getInt();
+        return new SpeciesParameters(breedingAge, maxAge, breedingProbability,
+                                     maxLitterSize, foodValue);
+    }
+
+    /**
+     * Return a view of part of the snapshot.
+     */
+    private ByteBuffer column(int start, int length)
+    {
+        ByteBuffer column = data.duplicate();
+        column.position(start);
+        column.limit(start + length);
+        return column.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,169 @@
+package com.statsim.objectsfirst;
+
+import java.util.Arrays;
+
+/**
+ * Cell storage for large, mostly empty fields. The field is divided
+ * into square chunks of CHUNK_SIZE by CHUNK_SIZE cells, and a chunk's
+ * cells are only allocated once one of them is occupied. A chunk is
+ * freed again as soon as its last occupant leaves, so memory follows
+ * the occupied area of the field rather than its size.
+ *
+ * Square chunks keep a cell and its neighbours in the same chunk, or
+ * in one of the few around it, so neighbourhood queries touch little
+ * memory. Cells in different chunks may be set by different threads at
+ * once, as PackedSimulator's workers do, because its tiles are a whole
+ * number of chunks across and no two chunks are shared by tiles that
+ * are processed at the same time.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class ChunkedCellStorage implements CellStorage
+{
+    // The number of rows and columns of cells in a chunk.
+    public static final int CHUNK_SIZE = 64;
+    // The number of bits to shift a row or column by to find its chunk.
+    private static final int CHUNK_SHIFT = 6;
+    // The mask giving the position of a row or column within its chunk.
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // The number of cells in a chunk.
+    private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+
+    // The width of the field, in cells.
+    private final int width;
+    // The number of chunks across the field.
+    private final int chunksAcross;
+    // The allocated chunks, row by row, or null where a chunk is empty.
+    private final Chunk[] chunks;
+
+    /**
+     * Create storage for a field of the given dimensions, all empty.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public ChunkedCellStorage(int depth, int width)
+    {
+        this.width = width;
+        chunksAcross = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        int chunksDown = (depth + CHUNK_MASK) >> CHUNK_SHIFT;
+        chunks = new Chunk[chunksAcross * chunksDown];
+    }
+
+    @Override
+    public int getSpecies(int cell)
+    {
+        int row = cell / width;
+        int col = cell - row * width;
+        Chunk chunk = chunks[chunkOf(row, col)];
+        return chunk == null ? Field.EMPTY : chunk.species[offsetOf(row, col)] & 0xff;
+    }
+
+    @Override
+    public int getHandle(int cell)
+    {
+        int row = cell / width;
+        int col = cell - row * width;
+        Chunk chunk = chunks[chunkOf(row, col)];
+        return chunk == null ? 0 : chunk.handles[offsetOf(row, col)];
+    }
+
+    @Override
+    public void set(int cell, int speciesCode, int handle)
+    {
+        int row = cell / width;
+        int col = cell - row * width;
+        int index = chunkOf(row, col);
+        int offset = offsetOf(row, col);
+        Chunk chunk = chunks[index];
+        if(chunk == null) {
+            if(speciesCode == Field.EMPTY) {
+                return;
+            }
+            chunk = new Chunk();
+            chunks[index] = chunk;
+        }
+        boolean wasEmpty = chunk.species[offset] == Field.EMPTY;
+        chunk.species[offset] = (byte) speciesCode;
+        chunk.handles[offset] = handle;
+        if(speciesCode == Field.EMPTY) {
+            if(!wasEmpty && --chunk.occupied == 0) {
+                chunks[index] = null;
+            }
+        }
+        else if(wasEmpty) {
+            chunk.occupied++;
+        }
+    }
+
+    @Override
+    public void setHandle(int cell, int handle)
+    {
+        int row = cell / width;
+        int col = cell - row * width;
+        chunks[chunkOf(row, col)].handles[offsetOf(row, col)] = handle;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(chunks, null);
+    }
+
+    @Override
+    public long getAllocatedBytes()
+    {
+        return (long) chunks.length * 4 + (long) getAllocatedChunks() * CHUNK_CELLS * 5;
+    }
+
+    /**
+     * Return the number of chunks currently allocated. This looks at
+     * every chunk, so it is meant for occasional reporting.
+     * @return The number of chunks with at least one occupant.
+     */
+    public int getAllocatedChunks()
+    {
+        int allocated = 0;
+        for(Chunk chunk : chunks) {
+            if(chunk != null) {
+                allocated++;
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * Return the index of the chunk holding a cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The index of its chunk.
+     */
+    private int chunkOf(int row, int col)
+    {
+        return (row >> CHUNK_SHIFT) * chunksAcross + (col >> CHUNK_SHIFT);
+    }
+
+    /**
+     * Return the position of a cell within its chunk.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The position of the cell in its chunk's arrays.
+     */
+    private static int offsetOf(int row, int col)
+    {
+        return ((row & CHUNK_MASK) << CHUNK_SHIFT) | (col & CHUNK_MASK);
+    }
+
+    /**
+     * The cells of one chunk.
+     */
+    private static class Chunk
+    {
+        // The species code of the occupant of each cell.
+        final byte[] species = new byte[CHUNK_CELLS];
+        // The handle of the occupant of each cell.
+        final int[] handles = new int[CHUNK_CELLS];
+        // The number of occupied cells.
+        int occupied;
+    }
+}
@@ -1,7 +1,6 @@
 package com.statsim.objectsfirst;
 
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
@@ -9,42 +8,208 @@ import java.util.Random;
 /**
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal.
+ *
+ * The grid holds, for every cell, a species code (zero for an empty
+ * cell) and a handle identifying the occupant, addressed by cell index,
+ * where the cell of (row, col) is row * width + col. Animal objects
+ * placed in the field are kept in a table indexed by handle. The cells
+ * themselves are kept in a CellStorage: flat arrays of five bytes per
+ * cell by default, or chunks allocated only where there are occupants
+ * for large fields that are mostly empty. Cell indexes are ints, so a
+ * field has at most Integer.MAX_VALUE cells. A simulator
+ * that keeps its own animals, such as PackedSimulator, can instead
+ * place its own handles directly with placeHandle; a field holds
+ * either objects or such handles, not both.
+ *
+ * The field also keeps the number of occupants of each species up to
+ * date as cells are filled and cleared, so that a census costs no
+ * more than one read per species. Once asked to with trackChanges, it
+ * also notes which cells, and which rows, have changed, so that a view
+ * only has to redraw those.
+ *
+ * Alongside the cells, the field keeps occupancy bitboards: for each
+ * species, and for all species together, one bit per cell, set where
+ * the cell is occupied, with every row starting on a new 64-bit word.
+ * Which of a cell's neighbours are free, or hold a given species, can
+ * then be read from three words or so as a mask of eight bits, one per
+ * direction, without looking at the neighbours one by one. The
+ * bitboards are laid out like the cells, see Occupancy: a bit per cell
+ * for every species, plus one, in flat arrays or direct buffers, or
+ * only for the 64 by 64 blocks with occupants alongside chunked storage.
  * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
 public class Field
 {
-    // A random number generator for providing random locations.
-    private static final Random rand = Randomizer.getRandom();
+    // The species code of an empty cell.
+    public static final int EMPTY = 0;
+    // The largest number of species a field can tell apart.
+    private static final int MAX_SPECIES = 255;
     
     // The depth and width of the field.
     private int depth, width;
-    // Storage for the animals.
-    private Object[][] field;
+    // The species code and handle of the occupant of each cell.
+    private CellStorage cells;
+    // The number of occupants of each species, indexed by species code.
+    private int[] population;
+    // What happened to each species in the current step.
+    private StepEvents events;
+    // Where the time of each step goes.
+    private StepMetrics metrics;
+    // The class of each species code, in order of registration, or
+    // null for a species known only by its name.
+    private Class<?>[] speciesClasses;
+    // The name of each species code: the name of its class, if it has one.
+    private String[] speciesNames;
+    // The number of species registered, plus one for EMPTY.
+    private int speciesCodes;
+    // For each species code, a bit per cell set where the cell holds
+    // that species, and for EMPTY, where the cell holds any species.
+    private Occupancy occupancy;
+    // The number of words holding one row of a bitboard.
+    private int rowWords;
+    // The animal objects in the field, indexed by handle, or null
+    // if handles are managed by the caller.
+    private Object[] occupants;
+    // Handles released by cleared cells, ready for reuse.
+    private int[] freeHandles;
+    // The number of handles in freeHandles.
+    private int freeCount;
+    // The number of handles ever given out.
+    private int handleCount;
+    // Whether each cell has changed since the changes were last
+    // cleared, or null if changes are not tracked.
+    private boolean[] changedCells;
+    // Whether each row has a changed cell, or null if changes are not
+    // tracked.
+    private boolean[] changedRows;
+    // The random number generator of the simulation the field belongs to.
+    private Random rand;
+    // A cursor over neighbouring cells, reused by every neighbourhood query.
+    private NeighbourCursor neighbours;
+    // The canonical location of each cell, created row by row when
+    // first asked for.
+    private Location[][] locations;
 
     /**
-     * Represent a field of the given dimensions.
+     * Represent a field of the given dimensions, drawing from the
+     * shared generator of Randomizer, which is for one thread only.
+     * Fields used on different threads at the same time need a
+     * generator each.
      * @param depth The depth of the field.
      * @param width The width of the field.
      */
     public Field(int depth, int width)
     {
+        this(depth, width, Randomizer.getRandom());
+    }
+
+    /**
+     * Represent a field of the given dimensions, belonging to a
+     * simulation with its own random number generator.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param rand The random number generator of the simulation,
+     *             used for random locations and by the animals.
+     */
+    public Field(int depth, int width, Random rand)
+    {
+        this(depth, width, rand, new FlatCellStorage(cellCount(depth, width)));
+    }
+
+    /**
+     * Represent a field of the given dimensions whose cells are kept
+     * in the given storage, belonging to a simulation with its own
+     * random number generator.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param rand The random number generator of the simulation,
+     *             used for random locations and by the animals.
+     * @param cells Empty storage for depth * width cells, such as a
+     *              ChunkedCellStorage for a large, sparse field. For
+     *              storage that already holds cells, see load.
+     */
+    public Field(int depth, int width, Random rand, CellStorage cells)
+    {
+        cellCount(depth, width);
         this.depth = depth;
+        this.rand = rand;
         this.width = width;
-        field = new Object[depth][width];
+        this.cells = cells;
+        population = new int[MAX_SPECIES + 1];
+        events = new StepEvents(MAX_SPECIES + 1);
+        metrics = new StepMetrics();
+        speciesClasses = new Class<?>[8];
+        speciesNames = new String[8];
+        speciesCodes = 1;
+        occupancy = Occupancy.forStorage(depth, width, cells);
+        rowWords = occupancy.getRowWords();
+        neighbours = new NeighbourCursor(depth, width, rand);
+        locations = new Location[depth][];
     }
     
+    /**
+     * Represent a field whose cells are already in the given storage,
+     * such as a mapped OffHeapCellStorage holding the grid of an
+     * earlier run. The species are registered in the given order, so
+     * that the first is species code 1, and every cell is looked at
+     * once to rebuild the population of each species and the bitboards.
+     * The handles in the cells are kept as they are, for a caller that
+     * manages its own, as PackedSimulator does: the field holds no
+     * animal objects.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param rand The random number generator of the simulation.
+     * @param cells Storage for depth * width cells, holding the grid.
+     * @param species The names of the species the cells were stored
+     *                with, in order of their species codes, as given by
+     *                getSpeciesName.
+     * @return The field.
+     * @throws IllegalArgumentException If a name is given twice, or a
+     *         cell holds a species code beyond those named.
+     */
+    public static Field load(int depth, int width, Random rand, CellStorage cells, String... species)
+    {
+        Field field = new Field(depth, width, rand, cells);
+        for(int code = 1; code <= species.length; code++) {
+            if(field.registerSpeciesNamed(species[code - 1]) != code) {
+                throw new IllegalArgumentException("The species " + species[code - 1] + " is named twice.");
+            }
+        }
+        int count = field.getCellCount();
+        for(int cell = 0; cell < count; cell++) {
+            int code = cells.getSpecies(cell);
+            if(code != EMPTY) {
+                if(code >= field.speciesCodes) {
+                    throw new IllegalArgumentException("Cell " + cell + " holds the unnamed species code "
+                                                       + code + ".");
+                }
+                field.population[code]++;
+                field.updateOccupancy(cell, EMPTY, code);
+            }
+        }
+        return field;
+    }
+
     /**
      * Empty the field.
      */
     public void clear()
     {
-        for(int row = 0; row < depth; row++) {
-            for(int col = 0; col < width; col++) {
-                field[row][col] = null;
-            }
+        cells.clear();
+        occupancy.clear();
+        if(changedCells != null) {
+            Arrays.fill(changedCells, true);
+            Arrays.fill(changedRows, true);
         }
+        Arrays.fill(population, 0);
+        events.reset();
+        if(occupants != null) {
+            Arrays.fill(occupants, 0, handleCount, null);
+        }
+        freeCount = 0;
+        handleCount = 0;
     }
     
     /**
@@ -53,7 +218,25 @@ public class Field
      */
     public void clear(Location location)
     {
-        field[location.getRow()][location.getCol()] = null;
+        clear(indexOf(location));
+    }
+
+    /**
+     * Clear the given cell.
+     * @param cell The index of the cell to clear.
+     */
+    public void clear(int cell)
+    {
+        int code = cells.getSpecies(cell);
+        if(code != EMPTY) {
+            if(occupants != null) {
+                releaseHandle(cells.getHandle(cell));
+            }
+            population[code]--;
+            cells.set(cell, EMPTY, 0);
+            updateOccupancy(cell, code, EMPTY);
+            markChanged(cell);
+        }
     }
     
     /**
@@ -66,7 +249,7 @@ public class Field
      */
     public void place(Object animal, int row, int col)
     {
-        place(animal, new Location(row, col));
+        place(animal, indexOf(row, col));
     }
     
     /**
@@ -78,7 +261,115 @@ public class Field
      */
     public void place(Object animal, Location location)
     {
-        field[location.getRow()][location.getCol()] = animal;
+        place(animal, indexOf(location));
+    }
+
+    /**
+     * Place an animal in the given cell.
+     * If there is already an animal in the cell it will be lost.
+     * @param animal The animal to be placed.
+     * @param cell The index of the cell.
+     */
+    public void place(Object animal, int cell)
+    {
+        clear(cell);
+        if(occupants == null) {
+            occupants = new Object[64];
+            freeHandles = new int[64];
+        }
+        int handle = acquireHandle();
+        occupants[handle] = animal;
+        int code = registerSpecies(animal.getClass());
+        cells.set(cell, code, handle);
+        updateOccupancy(cell, EMPTY, code);
+        population[code]++;
+        markChanged(cell);
+    }
+
+    /**
+     * Move the occupant of one cell to another. If there is already
+     * an occupant in the destination it will be lost. The occupant
+     * keeps its handle, and the population is unchanged.
+     * @param from The index of an occupied cell.
+     * @param to The index of the cell to move to.
+     */
+    public void move(int from, int to)
+    {
+        clear(to);
+        int code = cells.getSpecies(from);
+        cells.set(to, code, cells.getHandle(from));
+        cells.set(from, EMPTY, 0);
+        updateOccupancy(to, EMPTY, code);
+        updateOccupancy(from, code, EMPTY);
+        markChanged(to);
+        markChanged(from);
+    }
+
+    /**
+     * Place an occupant identified by the caller's own handle in the
+     * given cell. If there is already an occupant in the cell it will
+     * be lost.
+     * @param speciesCode The occupant's species code.
+     * @param handle The caller's handle for the occupant.
+     * @param cell The index of the cell.
+     */
+    public void placeHandle(int speciesCode, int handle, int cell)
+    {
+        if(occupants != null) {
+            throw new IllegalStateException("This field holds animal objects.");
+        }
+        int previous = cells.getSpecies(cell);
+        if(previous != EMPTY) {
+            population[previous]--;
+        }
+        occupancy.addBoard(speciesCode);
+        cells.set(cell, speciesCode, handle);
+        updateOccupancy(cell, previous, speciesCode);
+        population[speciesCode]++;
+        markChanged(cell);
+    }
+
+    /**
+     * Set the species and handle of the given cell without updating
+     * the population. Several threads may use this at once on
+     * different cells; they must then bring the population up to
+     * date with adjustPopulation once they are all done. Since the
+     * bitboards, and chunked storage, are updated a 64 by 64 block at
+     * a time, threads working at once must also keep to different
+     * blocks, such as different tiles of PackedSimulator; the species
+     * code must have been registered beforehand.
+     * @param cell The index of the cell.
+     * @param speciesCode The occupant's species code, or EMPTY.
+     * @param handle The caller's handle for the occupant.
+     */
+    void setOccupant(int cell, int speciesCode, int handle)
+    {
+        int previous = cells.getSpecies(cell);
+        cells.set(cell, speciesCode, handle);
+        updateOccupancy(cell, previous, speciesCode);
+        markChanged(cell);
+    }
+
+    /**
+     * Change the recorded population of a species. For use with
+     * setOccupant.
+     * @param speciesCode The species code.
+     * @param change The number of occupants gained, or lost if negative.
+     */
+    void adjustPopulation(int speciesCode, int change)
+    {
+        population[speciesCode] += change;
+    }
+
+    /**
+     * Change the handle of the occupant of the given cell, keeping
+     * its species. Used by callers that renumber their own handles.
+     * @param cell The index of an occupied cell.
+     * @param handle The occupant's new handle.
+     */
+    public void setHandle(int cell, int handle)
+    {
+        cells.setHandle(cell, handle);
     }
     
     /**
@@ -88,9 +379,23 @@ public class Field
      */
     public Object getObjectAt(Location location)
     {
-        return getObjectAt(location.getRow(), location.getCol());
+        return getObjectAt(indexOf(location));
     }
-    
+
+    /**
+     * Return the animal in the given cell, if any.
+     * @param cell The index of the cell.
+     * @return The animal in the cell, or null if there is none
+     *         or the field does not hold animal objects.
+     */
+    public Object getObjectAt(int cell)
+    {
+        if(occupants == null || cells.getSpecies(cell) == EMPTY) {
+            return null;
+        }
+        return occupants[cells.getHandle(cell)];
+    }
+
     /**
      * Return the animal at the given location, if any.
      * @param row The desired row.
@@ -99,7 +404,318 @@ public class Field
      */
     public Object getObjectAt(int row, int col)
     {
-        return field[row][col];
+        return getObjectAt(indexOf(row, col));
+    }
+
+    /**
+     * Return the species code of the occupant of the given cell.
+     * @param cell The index of the cell.
+     * @return The species code, or EMPTY.
+     */
+    public int getSpeciesAt(int cell)
+    {
+        return cells.getSpecies(cell);
+    }
+
+    /**
+     * Return the handle of the occupant of the given cell.
+     * @param cell The index of an occupied cell.
+     * @return The occupant's handle.
+     */
+    public int getHandleAt(int cell)
+    {
+        return cells.getHandle(cell);
+    }
+
+    /**
+     * Return the number of occupants of a species in the field. This
+     * is kept up to date as the field changes, so it does not need
+     * to look at the cells.
+     * @param speciesCode The species code.
+     * @return The number of cells that species occupies.
+     */
+    public int getPopulation(int speciesCode)
+    {
+        return population[speciesCode];
+    }
+
+    /**
+     * Return the random number generator of the simulation the field
+     * belongs to. The animals in the field draw from it, so that each
+     * simulation follows its own course.
+     * @return The random number generator.
+     */
+    public Random getRandom()
+    {
+        return rand;
+    }
+
+    /**
+     * Return the tally of births, deaths and kills in the current step.
+     * The simulator resets it at the start of every step, and the
+     * animals record their own events in it.
+     * @return The events of the current step.
+     */
+    public StepEvents getEvents()
+    {
+        return events;
+    }
+
+    /**
+     * Return the metrics of the simulation the field belongs to. The
+     * animals time the phases of what they do in it.
+     * @return The metrics.
+     */
+    public StepMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Return whether the given cell is empty.
+     * @param cell The index of the cell.
+     * @return true if nothing occupies the cell.
+     */
+    public boolean isFree(int cell)
+    {
+        return cells.getSpecies(cell) == EMPTY;
+    }
+
+    /**
+     * Return which of the cells adjacent to the given one are free.
+     * @param cell The index of the cell at the centre.
+     * @return A mask with bit d set if the neighbour in direction d,
+     *         as numbered by NeighbourCursor, is within the field and
+     *         free.
+     */
+    public int freeNeighbourMask(int cell)
+    {
+        int row = cell / width;
+        int col = cell - row * width;
+        int inField = 0xFF;
+        if(row == 0) {
+            inField &= ~0x07;
+        }
+        if(row == depth - 1) {
+            inField &= ~0xE0;
+        }
+        if(col == 0) {
+            inField &= ~0x29;
+        }
+        if(col == width - 1) {
+            inField &= ~0x94;
+        }
+        return ~neighbourBits(EMPTY, row, col) & inField;
+    }
+
+    /**
+     * Return which of the cells adjacent to the given one hold a
+     * given species.
+     * @param cell The index of the cell at the centre.
+     * @param speciesCode A species code, or -1.
+     * @return A mask with bit d set if the neighbour in direction d,
+     *         as numbered by NeighbourCursor, holds that species; 0
+     *         for a species that has never been in the field.
+     */
+    public int neighbourMask(int cell, int speciesCode)
+    {
+        if(speciesCode <= EMPTY || !occupancy.hasBoard(speciesCode)) {
+            return 0;
+        }
+        int row = cell / width;
+        return neighbourBits(speciesCode, row, cell - row * width);
+    }
+
+    /**
+     * Start noting which cells change. Every cell counts as changed
+     * to begin with, so that a view tracking changes starts by
+     * drawing the whole field. The flags take a byte per cell and a
+     * byte per row.
+     */
+    public void trackChanges()
+    {
+        if(changedCells == null) {
+            changedCells = new boolean[getCellCount()];
+            changedRows = new boolean[depth];
+            Arrays.fill(changedCells, true);
+            Arrays.fill(changedRows, true);
+        }
+    }
+
+    /**
+     * Return whether changes are being tracked.
+     * @return true if trackChanges has been called.
+     */
+    public boolean isTrackingChanges()
+    {
+        return changedCells != null;
+    }
+
+    /**
+     * Return whether any cell of a row has changed since the changes
+     * were last cleared.
+     * @param row The row.
+     * @return true if the row has a changed cell, or if changes are not
+     *         being tracked.
+     */
+    public boolean isRowChanged(int row)
+    {
+        return changedRows == null || changedRows[row];
+    }
+
+    /**
+     * Return whether a cell has changed since the changes were last
+     * cleared.
+     * @param cell The index of the cell.
+     * @return true if the cell has changed, or if changes are not being
+     *         tracked.
+     */
+    public boolean isCellChanged(int cell)
+    {
+        return changedCells == null || changedCells[cell];
+    }
+
+    /**
+     * Forget the changes made so far, once they have been drawn. Only
+     * the rows that have changed are visited.
+     */
+    public void clearChanges()
+    {
+        if(changedRows != null) {
+            for(int row = 0; row < depth; row++) {
+                if(changedRows[row]) {
+                    changedRows[row] = false;
+                    Arrays.fill(changedCells, row * width, (row + 1) * width, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the species code for a class of animal, giving the
+     * class the next free code if it has none yet. Codes are given
+     * out in order of registration, starting at 1.
+     * @param animalClass The class of animal.
+     * @return The species code of that class.
+     */
+    public int registerSpecies(Class<?> animalClass)
+    {
+        int code = getSpeciesCode(animalClass);
+        if(code > 0) {
+            return code;
+        }
+        return addSpecies(animalClass, animalClass.getName());
+    }
+
+    /**
+     * Return the species code for a species known only by its name,
+     * such as a row of a SpeciesTable without a class of animal,
+     * giving it the next free code if it has none yet. A class
+     * registered earlier is known by its class name.
+     * @param name The name of the species.
+     * @return The species code of that name.
+     */
+    public int registerSpecies(String name)
+    {
+        for(int code = 1; code < speciesCodes; code++) {
+            if(speciesNames[code].equals(name)) {
+                return code;
+            }
+        }
+        return addSpecies(null, name);
+    }
+
+    /**
+     * Return the species code for a species by the name getSpeciesName
+     * gives it: as its class of animal if there is a class of that
+     * name, otherwise by the name alone.
+     * @param name The name of the species.
+     * @return The species code of that species.
+     */
+    int registerSpeciesNamed(String name)
+    {
+        try {
+            return registerSpecies(Class.forName(name));
+        }
+        catch(ClassNotFoundException e) {
+            // A species known only by its name.
+            return registerSpecies(name);
+        }
+    }
+
+    /**
+     * Return the species code of a class of animal, without
+     * registering it.
+     * @param animalClass The class of animal.
+     * @return The species code of that class, or -1 if it has none.
+     */
+    public int getSpeciesCode(Class<?> animalClass)
+    {
+        for(int code = 1; code < speciesCodes; code++) {
+            if(speciesClasses[code] == animalClass) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the class of animal with the given species code.
+     * @param code A registered species code.
+     * @return The class of animal.
+     */
+    public Class<?> getSpeciesClass(int code)
+    {
+        return speciesClasses[code];
+    }
+
+    /**
+     * Return the name of the species with the given species code.
+     * @param code A registered species code.
+     * @return The name of its class, or the name it was registered
+     *         under if it has no class.
+     */
+    public String getSpeciesName(int code)
+    {
+        return speciesNames[code];
+    }
+
+    /**
+     * Return the number of species codes in use, including EMPTY.
+     * Valid codes are 0 up to, but not including, this number.
+     * @return The number of species codes.
+     */
+    public int getSpeciesCodes()
+    {
+        return speciesCodes;
+    }
+
+    /**
+     * Return the number of cells in the field.
+     * @return The depth times the width of the field.
+     */
+    public int getCellCount()
+    {
+        return depth * width;
+    }
+
+    /**
+     * Return the number of bytes currently taken by the occupancy
+     * bitboards, which depends on the cell storage, see Occupancy.
+     * @return The size of the bitboards in bytes.
+     */
+    public long getBitboardBytes()
+    {
+        return occupancy.getAllocatedBytes();
+    }
+
+    /**
+     * Return the storage holding the field's cells.
+     * @return The cell storage.
+     */
+    public CellStorage getCellStorage()
+    {
+        return cells;
     }
     
     /**
@@ -112,8 +728,7 @@ public class Field
      */
     public Location randomAdjacentLocation(Location location)
     {
-        List<Location> adjacent = adjacentLocations(location);
-        return adjacent.get(0);
+        return getLocation(adjacentCells(indexOf(location)).next());
     }
     
     /**
@@ -124,11 +739,11 @@ public class Field
     public List<Location> getFreeAdjacentLocations(Location location)
     {
         List<Location> free = new LinkedList<>();
-        List<Location> adjacent = adjacentLocations(location);
-        for(Location next : adjacent) {
-            if(getObjectAt(next) == null) {
-                free.add(next);
-            }
+        int cell = indexOf(location);
+        NeighbourCursor adjacent = adjacentCells(cell);
+        int mask = freeNeighbourMask(cell);
+        for(int n = Integer.bitCount(mask); n > 0; n--) {
+            free.add(getLocation(adjacent.nextIn(mask)));
         }
         return free;
     }
@@ -143,16 +758,26 @@ public class Field
      */
     public Location freeAdjacentLocation(Location location)
     {
-        // The available free ones.
-        List<Location> free = getFreeAdjacentLocations(location);
-        if(free.size() > 0) {
-            return free.get(0);
+        int free = freeAdjacentCell(indexOf(location));
+        if(free >= 0) {
+            return getLocation(free);
         }
         else {
             return null;
         }
     }
 
+    /**
+     * Try to find a free cell that is adjacent to the given cell.
+     * The adjacent cells are tried in random order.
+     * @param cell The index of the cell at the centre.
+     * @return The index of a free adjacent cell, or -1 if there is none.
+     */
+    public int freeAdjacentCell(int cell)
+    {
+        return adjacentCells(cell).nextIn(freeNeighbourMask(cell));
+    }
+
     /**
      * Return a shuffled list of locations adjacent to the given one.
      * The list will not include the location itself.
@@ -166,28 +791,84 @@ public class Field
         // The list of locations to be returned.
         List<Location> locations = new LinkedList<>();
         if(location != null) {
-            int row = location.getRow();
-            int col = location.getCol();
-            for(int roffset = -1; roffset <= 1; roffset++) {
-                int nextRow = row + roffset;
-                if(nextRow >= 0 && nextRow < depth) {
-                    for(int coffset = -1; coffset <= 1; coffset++) {
-                        int nextCol = col + coffset;
-                        // Exclude invalid locations and the original location.
-                        if(nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                            locations.add(new Location(nextRow, nextCol));
-                        }
-                    }
-                }
+            NeighbourCursor adjacent = adjacentCells(indexOf(location));
+            while(adjacent.hasNext()) {
+                locations.add(getLocation(adjacent.next()));
             }
-            
-            // Shuffle the list. Several other methods rely on the list
-            // being in a random order.
-            Collections.shuffle(locations, rand);
         }
         return locations;
     }
 
+    /**
+     * Position the field's neighbour cursor at the cells adjacent to
+     * the given one, in random order. Several other methods rely on
+     * the cells being in a random order.
+     * The cursor is shared: it is repositioned by the next
+     * neighbourhood query on this field, so it must be used up first.
+     * @param cell The index of the cell at the centre.
+     * @return The cursor over the adjacent cells.
+     */
+    public NeighbourCursor adjacentCells(int cell)
+    {
+        return neighbours.reset(cell);
+    }
+
+    /**
+     * Return the index of the cell at the given location.
+     * @param location A location within the field.
+     * @return The index of its cell, row * width + col.
+     */
+    public int indexOf(Location location)
+    {
+        return location.getRow() * width + location.getCol();
+    }
+
+    /**
+     * Return the index of the cell at the given row and column.
+     * @param row The row.
+     * @param col The column.
+     * @return The index of the cell, row * width + col.
+     */
+    public int indexOf(int row, int col)
+    {
+        return row * width + col;
+    }
+
+    /**
+     * Return the location of the given cell. The field owns one
+     * location for every cell and always returns that same instance,
+     * so asking for a location does not create a new object.
+     * @param cell The index of the cell.
+     * @return The location of the cell.
+     */
+    public Location getLocation(int cell)
+    {
+        return getLocation(cell / width, cell % width);
+    }
+
+    /**
+     * Return the location at the given row and column. The field
+     * owns one location for every cell and always returns that same
+     * instance.
+     * @param row The row.
+     * @param col The column.
+     * @return The location.
+     */
+    public Location getLocation(int row, int col)
+    {
+        Location[] rowLocations = locations[row];
+        if(rowLocations == null) {
+            rowLocations = new Location[width];
+            locations[row] = rowLocations;
+        }
+        Location location = rowLocations[col];
+        if(location == null) {
+            location = new Location(row, col);
+            rowLocations[col] = location;
+        }
+        return location;
+    }
+
     /**
      * Return the depth of the field.
      * @return The depth of the field.
@@ -205,4 +886,148 @@ public class Field
     {
         return width;
     }
+
+    /**
+     * Check that a field of the given dimensions can be addressed by
+     * int cell indexes.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @return The number of cells in the field.
+     * @throws IllegalArgumentException If the field is empty or has
+     *         more than Integer.MAX_VALUE cells.
+     */
+    private static int cellCount(int depth, int width)
+    {
+        long count = (long) depth * width;
+        if(depth <= 0 || width <= 0 || count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A field of " + depth + " by " + width
+                                               + " cells cannot be represented.");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Give the next free species code to a new species.
+     * @param animalClass The class of the species, or null.
+     * @param name The name of the species.
+     * @return Its species code.
+     */
+    private int addSpecies(Class<?> animalClass, String name)
+    {
+        if(speciesCodes > MAX_SPECIES) {
+            throw new IllegalStateException("Too many species in one field.");
+        }
+        if(speciesCodes == speciesClasses.length) {
+            speciesClasses = Arrays.copyOf(speciesClasses, speciesClasses.length * 2);
+            speciesNames = Arrays.copyOf(speciesNames, speciesNames.length * 2);
+        }
+        speciesClasses[speciesCodes] = animalClass;
+        speciesNames[speciesCodes] = name;
+        occupancy.addBoard(speciesCodes);
+        return speciesCodes++;
+    }
+
+    /**
+     * Bring the bitboards up to date with a change of occupant.
+     * @param cell The index of the cell.
+     * @param previous The species code the cell held, or EMPTY.
+     * @param code The species code it holds now, or EMPTY.
+     */
+    private void updateOccupancy(int cell, int previous, int code)
+    {
+        if(previous == code) {
+            return;
+        }
+        int row = cell / width;
+        occupancy.update(row, cell - row * width, previous, code);
+    }
+
+    /**
+     * Gather the bits of the eight neighbours of a cell from a
+     * bitboard. Neighbours outside the field count as clear.
+     * @param board The species code of the bitboard, or EMPTY for
+     *              all occupants.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @return The bits, in the direction order of NeighbourCursor.
+     */
+    private int neighbourBits(int board, int row, int col)
+    {
+        int mask = 0;
+        if(row > 0) {
+            mask = rowBits(board, row - 1, col);
+        }
+        int middle = rowBits(board, row, col);
+        mask |= (middle & 1) << 3 | (middle & 4) << 2;
+        if(row < depth - 1) {
+            mask |= rowBits(board, row + 1, col) << 5;
+        }
+        return mask;
+    }
+
+    /**
+     * Read the bits of three neighbouring columns of a row from a
+     * bitboard. Columns outside the field read as clear, since the
+     * bits past the end of a row are never set.
+     * @param board The species code of the bitboard, or EMPTY for
+     *              all occupants.
+     * @param row The row.
+     * @param col The middle column.
+     * @return The bits of columns col - 1, col and col + 1, lowest first.
+     */
+    private int rowBits(int board, int row, int col)
+    {
+        if(col == 0) {
+            return (int) (occupancy.word(board, row, 0) << 1) & 7;
+        }
+        int start = col - 1;
+        int word = start >>> 6;
+        int shift = start & 63;
+        long bits = occupancy.word(board, row, word) >>> shift;
+        if(shift > 61 && word + 1 < rowWords) {
+            bits |= occupancy.word(board, row, word + 1) << (64 - shift);
+        }
+        return (int) bits & 7;
+    }
+
+    /**
+     * Note that a cell has changed, if changes are being tracked.
+     * Workers of PackedSimulator may call this at once for different
+     * cells; they only ever set flags, so they cannot undo each other.
+     * @param cell The index of the cell.
+     */
+    private void markChanged(int cell)
+    {
+        if(changedCells != null) {
+            changedCells[cell] = true;
+            changedRows[cell / width] = true;
+        }
+    }
+
+    /**
+     * Take a handle for a new animal object, reusing a released one
+     * if possible.
+     * @return The handle.
+     */
+    private int acquireHandle()
+    {
+        if(freeCount > 0) {
+            return freeHandles[--freeCount];
+        }
+        if(handleCount == occupants.length) {
+            occupants = Arrays.copyOf(occupants, occupants.length * 2);
+            freeHandles = Arrays.copyOf(freeHandles, freeHandles.length * 2);
+        }
+        return handleCount++;
+    }
+
+    /**
+     * Release the handle of an animal object that has left the field.
+     * @param handle The handle.
+     */
+    private void releaseHandle(int handle)
+    {
+        occupants[handle] = null;
+        freeHandles[freeCount++] = handle;
+    }
 }
@@ -0,0 +1,179 @@
+package com.statsim.objectsfirst;
+
+/**
+ * A copy of the state of a field at the end of a step, made by the
+ * simulation thread for a view to draw on another thread: the species
+ * code of every cell, the color of every species code and a
+ * description of the population.
+ *
+ * A snapshot is filled in before it is published and is not changed
+ * while a view may be reading it; once the view is done with it, it
+ * may be handed back to be filled in again for a later step, so the
+ * simulation does not allocate a new one every step.
+ *
+ * Each time the field is shown its cells get a new version number, and
+ * each row is marked with the version it last changed at. A snapshot
+ * filled in again copies only the rows changed since the version it
+ * holds, and a view that remembers the version it last drew can redraw
+ * only the rows changed since then.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class FieldSnapshot
+{
+    // The depth and width of the field.
+    private final int depth, width;
+    // The species code of every cell.
+    private final byte[] species;
+    // The version each row last changed at.
+    private final int[] rowVersions;
+    // The version of the cells held, or -1 before any are.
+    private int version;
+    // The RGB color of every species code.
+    private int[] palette;
+    // The step the snapshot was taken at.
+    private int step;
+    // A description of the population.
+    private String populationDetails;
+
+    /**
+     * Create an empty snapshot of a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public FieldSnapshot(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        species = new byte[depth * width];
+        rowVersions = new int[depth];
+        version = -1;
+        palette = new int[0];
+    }
+
+    /**
+     * Take a new snapshot of a field, as when it is to be kept rather
+     * than handed back.
+     * @param step The step it is taken at.
+     * @param field The field.
+     * @param colors The RGB color of every species code. The array is
+     *               kept, not copied, so it must not be changed afterwards.
+     * @param details A description of the population.
+     * @return The snapshot.
+     */
+    public static FieldSnapshot of(int step, Field field, int[] colors, String details)
+    {
+        FieldSnapshot snapshot = new FieldSnapshot(field.getDepth(), field.getWidth());
+        for(int cell = 0; cell < snapshot.species.length; cell++) {
+            snapshot.species[cell] = (byte) field.getSpeciesAt(cell);
+        }
+        snapshot.version = 0;
+        snapshot.step = step;
+        snapshot.palette = colors;
+        snapshot.populationDetails = details;
+        return snapshot;
+    }
+
+    /**
+     * Fill in the snapshot, copying only the rows that changed since the
+     * version it holds.
+     * @param step The step it is taken at.
+     * @param version The version of the cells, above any held before.
+     * @param cells The species code of every cell.
+     * @param changes The version each row last changed at.
+     * @param colors The RGB color of every species code. The array is
+     *               kept, not copied, so it must not be changed afterwards.
+     * @param details A description of the population.
+     */
+    void fill(int step, int version, byte[] cells, int[] changes, int[] colors, String details)
+    {
+        this.step = step;
+        for(int row = 0; row < depth; row++) {
+            if(changes[row] > this.version) {
+                System.arraycopy(cells, row * width, species, row * width, width);
+            }
+        }
+        System.arraycopy(changes, 0, rowVersions, 0, depth);
+        this.version = version;
+        palette = colors;
+        populationDetails = details;
+    }
+
+    /**
+     * @return The step the snapshot was taken at.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The version of the cells held.
+     */
+    int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @param row A row of the field.
+     * @return The version the row last changed at.
+     */
+    int getRowVersion(int row)
+    {
+        return rowVersions[row];
+    }
+
+    /**
+     * @return The RGB color of every species code.
+     */
+    int[] getPalette()
+    {
+        return palette;
+    }
+
+    /**
+     * @return The depth of the field.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return The width of the field.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Return the species code of the occupant of a cell.
+     * @param cell The index of the cell.
+     * @return The species code, or Field.EMPTY.
+     */
+    public int getSpeciesAt(int cell)
+    {
+        return species[cell] & 0xff;
+    }
+
+    /**
+     * Return the color to draw a cell in.
+     * @param cell The index of the cell.
+     * @return The RGB color of the cell's occupant, or of an empty cell.
+     */
+    public int getColorAt(int cell)
+    {
+        return palette[species[cell] & 0xff];
+    }
+
+    /**
+     * @return A description of the population.
+     */
+    public String getPopulationDetails()
+    {
+        return populationDetails;
+    }
+}
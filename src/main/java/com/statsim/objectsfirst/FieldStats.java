@@ -1,32 +1,24 @@
 package com.statsim.objectsfirst;
 
-import java.awt.Color;
-import java.util.HashMap;
-
 /**
- * This class collects and provides some statistical data on the state 
- * of a field. It is flexible: it will create and maintain a counter 
- * for any class of object that is found within the field.
+ * This class provides some statistical data on the state of a field.
+ * It is flexible: it reports on every species of object that has been
+ * placed in the field.
+ *
+ * The field itself keeps the number of occupants of each species up
+ * to date, so the statistics are read from it by species code, at the
+ * cost of one read per species, rather than counted cell by cell.
  * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
  */
 public class FieldStats
 {
-    // Counters for each type of entity (fox, rabbit, etc.) in the simulation.
-    private HashMap<Class, Counter> counters;
-    // Whether the counters are currently up to date.
-    private boolean countsValid;
-
     /**
      * Construct a FieldStats object.
      */
     public FieldStats()
     {
-        // Set up a collection for counters for each type of animal that
-        // we might find
-        counters = new HashMap<>();
-        countsValid = true;
     }
 
     /**
@@ -35,55 +27,30 @@ public class FieldStats
      */
     public String getPopulationDetails(Field field)
     {
-        StringBuffer buffer = new StringBuffer();
-        if(!countsValid) {
-            generateCounts(field);
-        }
-        for(Class key : counters.keySet()) {
-            Counter info = counters.get(key);
-            buffer.append(info.getName());
+        StringBuilder buffer = new StringBuilder();
+        for(int code = 1; code < field.getSpeciesCodes(); code++) {
+            buffer.append(field.getSpeciesName(code));
             buffer.append(": ");
-            buffer.append(info.getCount());
+            buffer.append(field.getPopulation(code));
             buffer.append(' ');
         }
         return buffer.toString();
     }
-    
-    /**
-     * Invalidate the current set of statistics; reset all 
-     * counts to zero.
-     */
-    public void reset()
-    {
-        countsValid = false;
-        for(Class key : counters.keySet()) {
-            Counter count = counters.get(key);
-            count.reset();
-        }
-    }
 
     /**
-     * Increment the count for one class of animal.
-     * @param animalClass The class of animal to increment.
+     * Get the number of animals of one class in the field.
+     * @param field The field to look at.
+     * @param animalClass The class of animal.
+     * @return The number of animals of that class.
      */
-    public void incrementCount(Class animalClass)
+    public int getCount(Field field, Class<?> animalClass)
     {
-        Counter count = counters.get(animalClass);
-        if(count == null) {
-            // We do not have a counter for this species yet.
-            // Create one.
-            count = new Counter(animalClass.getName());
-            counters.put(animalClass, count);
+        for(int code = 1; code < field.getSpeciesCodes(); code++) {
+            if(field.getSpeciesClass(code) == animalClass) {
+                return field.getPopulation(code);
+            }
         }
-        count.increment();
-    }
-
-    /**
-     * Indicate that an animal count has been completed.
-     */
-    public void countFinished()
-    {
-        countsValid = true;
+        return 0;
     }
 
     /**
@@ -95,36 +62,11 @@ public class FieldStats
     {
         // How many counts are non-zero.
         int nonZero = 0;
-        if(!countsValid) {
-            generateCounts(field);
-        }
-        for(Class key : counters.keySet()) {
-            Counter info = counters.get(key);
-            if(info.getCount() > 0) {
+        for(int code = 1; code < field.getSpeciesCodes(); code++) {
+            if(field.getPopulation(code) > 0) {
                 nonZero++;
             }
         }
         return nonZero > 1;
     }
-    
-    /**
-     * Generate counts of the number of foxes and rabbits.
-     * These are not kept up to date as foxes and rabbits
-     * are placed in the field, but only when a request
-     * is made for the information.
-     * @param field The field to generate the stats for.
-     */
-    private void generateCounts(Field field)
-    {
-        reset();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    incrementCount(animal.getClass());
-                }
-            }
-        }
-        countsValid = true;
-    }
 }
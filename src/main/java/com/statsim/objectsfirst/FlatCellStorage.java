@@ -0,0 +1,67 @@
+package com.statsim.objectsfirst;
+
+import java.util.Arrays;
+
+/**
+ * Cell storage as two flat arrays indexed by cell: a species code and a
+ * handle for every cell, five bytes per cell whether it is occupied or
+ * not.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class FlatCellStorage implements CellStorage
+{
+    // The species code of the occupant of each cell.
+    private final byte[] species;
+    // The handle of the occupant of each cell.
+    private final int[] handles;
+
+    /**
+     * Create storage for the given number of cells, all empty.
+     * @param cellCount The number of cells.
+     */
+    public FlatCellStorage(int cellCount)
+    {
+        species = new byte[cellCount];
+        handles = new int[cellCount];
+    }
+
+    @Override
+    public int getSpecies(int cell)
+    {
+        return species[cell] & 0xff;
+    }
+
+    @Override
+    public int getHandle(int cell)
+    {
+        return handles[cell];
+    }
+
+    @Override
+    public void set(int cell, int speciesCode, int handle)
+    {
+        species[cell] = (byte) speciesCode;
+        handles[cell] = handle;
+    }
+
+    @Override
+    public void setHandle(int cell, int handle)
+    {
+        handles[cell] = handle;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(species, (byte) Field.EMPTY);
+        Arrays.fill(handles, 0);
+    }
+
+    @Override
+    public long getAllocatedBytes()
+    {
+        return species.length * 5L;
+    }
+}
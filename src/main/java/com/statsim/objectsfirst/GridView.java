@@ -0,0 +1,352 @@
+package com.statsim.objectsfirst;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.reflect.InvocationTargetException;
+import javax.swing.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A graphical view of the simulation grid.
+ * The view displays a colored rectangle for each location
+ * representing its contents. It uses a default background color.
+ * Colors for each type of species can be defined using the
+ * setColor method.
+ *
+ * The simulation thread never touches Swing. At the end of every step
+ * it publishes a snapshot of the field, copying only the cells that
+ * changed into a mirror of the grid, and only the rows changed since a
+ * recycled snapshot was last filled from the mirror into it. A timer on the event dispatch thread draws the latest
+ * snapshot at most MAX_FRAMES_PER_SECOND times a second, so steps that
+ * come faster than that are skipped rather than slowing the simulation
+ * down. At most three snapshots exist: the latest, the one being drawn
+ * and a spare.
+ *
+ * The field is drawn into an image with one pixel per cell, written
+ * straight into its raster, and scaled up to the size of the window
+ * when painted. Only the rows changed since the last frame are drawn
+ * and repainted; everything is drawn again when the colors change or
+ * another field is shown.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class GridView extends JFrame implements SimulatorView
+{
+    // Colors used for empty locations.
+    private static final Color EMPTY_COLOR = Color.white;
+
+    // Color used for objects that have no defined color.
+    private static final Color UNKNOWN_COLOR = Color.orange;
+
+    // The most frames drawn in a second.
+    private static final int MAX_FRAMES_PER_SECOND = 30;
+
+    private final String STEP_PREFIX = "Step: ";
+    private final String POPULATION_PREFIX = "Population: ";
+    private JLabel stepLabel, population;
+    private FieldView fieldView;
+    // The timer drawing the latest snapshot on the event dispatch thread.
+    private Timer renderTimer;
+
+    // A map for storing colors for participants in the simulation
+    private Map<Class, Color> colors;
+    // The RGB value of each species code of the field last shown, or
+    // null if it has to be worked out again.
+    private int[] palette;
+    // A statistics object computing and storing simulation information
+    private FieldStats stats;
+    // The species code of every cell of the field last shown, kept up
+    // to date from the cells that change.
+    private byte[] mirror;
+    // The version each row of the mirror last changed at.
+    private int[] rowVersions;
+    // The version of the mirror, raised every time a field is shown.
+    private int version;
+    // The field last shown.
+    private Field lastField;
+    // The latest snapshot, not drawn yet, or null.
+    private final AtomicReference<FieldSnapshot> latest;
+    // A snapshot that is no longer needed, ready to be filled in again.
+    private final AtomicReference<FieldSnapshot> spare;
+
+    /**
+     * Create a view of the given width and height.
+     * @param height The simulation's height.
+     * @param width  The simulation's width.
+     */
+    public GridView(int height, int width)
+    {
+        stats = new FieldStats();
+        colors = new LinkedHashMap<>();
+        latest = new AtomicReference<>();
+        spare = new AtomicReference<>();
+        onEventThread(() -> buildWindow(height, width));
+    }
+
+    /**
+     * Lay out the window and start drawing. Runs on the event dispatch
+     * thread.
+     * @param height The simulation's height.
+     * @param width  The simulation's width.
+     */
+    private void buildWindow(int height, int width)
+    {
+        setTitle("Hawks and squirrels");
+        stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
+        population = new JLabel(POPULATION_PREFIX, JLabel.CENTER);
+
+        setLocation(100, 50);
+
+        fieldView = new FieldView(height, width);
+
+        Container contents = getContentPane();
+        contents.add(stepLabel, BorderLayout.NORTH);
+        contents.add(fieldView, BorderLayout.CENTER);
+        contents.add(population, BorderLayout.SOUTH);
+        pack();
+        setVisible(true);
+
+        renderTimer = new Timer(1000 / MAX_FRAMES_PER_SECOND, e -> drawLatest());
+        renderTimer.start();
+    }
+
+    /**
+     * Define a color to be used for a given class of animal.
+     * @param animalClass The animal's Class object.
+     * @param color The color to be used for the given class.
+     */
+    public void setColor(Class<?> animalClass, Color color)
+    {
+        colors.put(animalClass, color);
+        palette = null;
+    }
+
+    /**
+     * @return The color to be used for a given class of animal.
+     */
+    private Color getColor(Class animalClass)
+    {
+        Color col = colors.get(animalClass);
+        if(col == null) {
+            // no color defined for this class
+            return UNKNOWN_COLOR;
+        }
+        else {
+            return col;
+        }
+    }
+
+    /**
+     * Return the color of each species code of a field. A new array
+     * is made whenever the colors change, since snapshots keep it.
+     * @param field The field about to be shown.
+     * @return The RGB colors, indexed by species code.
+     */
+    private int[] getPalette(Field field)
+    {
+        if(palette == null || palette.length != field.getSpeciesCodes()) {
+            palette = new int[field.getSpeciesCodes()];
+            palette[Field.EMPTY] = EMPTY_COLOR.getRGB();
+            for(int code = 1; code < palette.length; code++) {
+                palette[code] = getColor(field.getSpeciesClass(code)).getRGB();
+            }
+        }
+        return palette;
+    }
+
+    /**
+     * Show the current status of the field. Called on the simulation
+     * thread; publishes a snapshot to be drawn later.
+     * @param step Which iteration step it is.
+     * @param field The field whose status is to be displayed.
+     */
+    public void showStatus(int step, Field field)
+    {
+        // Copy everything again for a new field.
+        boolean redraw = field != lastField || mirror == null || mirror.length != field.getCellCount();
+        if(redraw) {
+            mirror = new byte[field.getCellCount()];
+            rowVersions = new int[field.getDepth()];
+        }
+        field.trackChanges();
+        lastField = field;
+        version++;
+
+        int width = field.getWidth();
+        for(int row = 0; row < field.getDepth(); row++) {
+            if(redraw || field.isRowChanged(row)) {
+                rowVersions[row] = version;
+                int first = row * width;
+                for(int cell = first; cell < first + width; cell++) {
+                    if(redraw || field.isCellChanged(cell)) {
+                        mirror[cell] = (byte) field.getSpeciesAt(cell);
+                    }
+                }
+            }
+        }
+        field.clearChanges();
+
+        FieldSnapshot snapshot = spare.getAndSet(null);
+        if(snapshot == null || snapshot.getDepth() != field.getDepth() || snapshot.getWidth() != width) {
+            snapshot = new FieldSnapshot(field.getDepth(), width);
+        }
+        snapshot.fill(step, version, mirror, rowVersions, getPalette(field), stats.getPopulationDetails(field));
+        FieldSnapshot skipped = latest.getAndSet(snapshot);
+        if(skipped != null) {
+            spare.set(skipped);
+        }
+    }
+
+    /**
+     * Draw the latest snapshot, if there is a new one. Runs on the
+     * event dispatch thread.
+     */
+    private void drawLatest()
+    {
+        FieldSnapshot snapshot = latest.getAndSet(null);
+        if(snapshot == null) {
+            return;
+        }
+        if(!isVisible()) {
+            setVisible(true);
+        }
+
+        stepLabel.setText(STEP_PREFIX + snapshot.getStep());
+        fieldView.draw(snapshot);
+        population.setText(POPULATION_PREFIX + snapshot.getPopulationDetails());
+        spare.set(snapshot);
+    }
+
+    /**
+     * Determine whether the simulation should continue to run.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable(Field field)
+    {
+        return stats.isViable(field);
+    }
+
+    /**
+     * Get details of what is in the field.
+     * @param field The field to describe.
+     * @return A string describing the population of the field.
+     */
+    public String getPopulationDetails(Field field)
+    {
+        return stats.getPopulationDetails(field);
+    }
+
+    /**
+     * Run a task on the event dispatch thread and wait for it to finish.
+     * @param task The task to run.
+     */
+    private static void onEventThread(Runnable task)
+    {
+        if(SwingUtilities.isEventDispatchThread()) {
+            task.run();
+            return;
+        }
+        try {
+            SwingUtilities.invokeAndWait(task);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch(InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create the window.", e.getCause());
+        }
+    }
+
+    /**
+     * Provide a graphical view of a rectangular field. This is
+     * a nested class (a class defined inside a class) which
+     * defines a custom component for the user interface. This
+     * component displays the field.
+     * This is rather advanced GUI stuff - you can ignore this
+     * for your project if you like.
+     */
+    private class FieldView extends JPanel
+    {
+        private final int GRID_VIEW_SCALING_FACTOR = 6;
+
+        private int gridWidth, gridHeight;
+        // The field, one pixel per cell.
+        private BufferedImage fieldImage;
+        // The pixels of the image, row by row, indexed by cell.
+        private int[] pixels;
+        // The version of the snapshot last drawn, or -1 before any is.
+        private int drawnVersion = -1;
+        // The colors of the snapshot last drawn.
+        private int[] drawnPalette;
+
+        /**
+         * Create a new FieldView component.
+         */
+        public FieldView(int height, int width)
+        {
+            gridHeight = height;
+            gridWidth = width;
+            fieldImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
+        }
+
+        /**
+         * Tell the GUI manager how big we would like to be.
+         */
+        public Dimension getPreferredSize()
+        {
+            return new Dimension(gridWidth * GRID_VIEW_SCALING_FACTOR,
+                                 gridHeight * GRID_VIEW_SCALING_FACTOR);
+        }
+
+        /**
+         * Draw the rows of a snapshot that changed since the last one
+         * drawn into the field image, and repaint them.
+         * @param snapshot The snapshot to draw.
+         */
+        public void draw(FieldSnapshot snapshot)
+        {
+            boolean redraw = drawnVersion < 0 || snapshot.getPalette() != drawnPalette;
+            int depth = Math.min(gridHeight, snapshot.getDepth());
+            int width = Math.min(gridWidth, snapshot.getWidth());
+            int first = -1, last = -1;
+            for(int row = 0; row < depth; row++) {
+                if(redraw || snapshot.getRowVersion(row) > drawnVersion) {
+                    int pixel = row * gridWidth;
+                    int cell = row * snapshot.getWidth();
+                    for(int col = 0; col < width; col++) {
+                        pixels[pixel + col] = snapshot.getColorAt(cell + col);
+                    }
+                    if(first < 0) {
+                        first = row;
+                    }
+                    last = row;
+                }
+            }
+            drawnVersion = snapshot.getVersion();
+            drawnPalette = snapshot.getPalette();
+            if(first >= 0) {
+                // Repaint the band of the component the changed rows are scaled to.
+                int height = getHeight();
+                int top = first * height / gridHeight;
+                int bottom = ((last + 1) * height + gridHeight - 1) / gridHeight;
+                repaint(0, top, getWidth(), bottom - top);
+            }
+        }
+
+        /**
+         * The field view component needs to be redisplayed. Scale the
+         * field image up to the size of the component.
+         */
+        public void paintComponent(Graphics g)
+        {
+            Dimension currentSize = getSize();
+            g.drawImage(fieldImage, 0, 0, currentSize.width, currentSize.height, null);
+        }
+    }
+}
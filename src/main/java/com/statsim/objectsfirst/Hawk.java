@@ -1,40 +1,15 @@
 package com.statsim.objectsfirst;
 
-import java.util.List;
-import java.util.Iterator;
-import java.util.Random;
-
 /**
  * A simple model of a hawk.
- * Hawks age, move, eat squirrels, and die.
+ * Hawks age, move, eat squirrels, and die. Their characteristics
+ * default to SpeciesParameters.HAWK.
  *
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29 (2)
  */
-public class Hawk extends Animal
+public class Hawk extends Predator
 {
-    // Characteristics shared by all hawkes (class variables).
-
-    // The age at which a hawk can start to breed.
-    private static final int BREEDING_AGE = 15;
-    // The age to which a hawk can live.
-    private static final int MAX_AGE = 150;
-    // The likelihood of a hawk breeding.
-    private static final double BREEDING_PROBABILITY = 0.08;
-    // The maximum number of births.
-    private static final int MAX_LITTER_SIZE = 2;
-    // The food value of a single squirrel. In effect, this is the
-    // number of steps a hawk can go before it has to eat again.
-    private static final int RABBIT_FOOD_VALUE = 9;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
-
-    // Individual characteristics (instance fields).
-    // The hawk's age.
-    private int age;
-    // The hawk's food level, which is increased by eating squirrels.
-    private int foodLevel;
-
     /**
      * Create a hawk. A hawk can be created as a new born (age zero
      * and not hungry) or with a random age and food level.
@@ -45,132 +20,59 @@ public class Hawk extends Animal
      */
     public Hawk(boolean randomAge, Field field, Location location)
     {
-        super(field, location);
-        if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
-            foodLevel = rand.nextInt(RABBIT_FOOD_VALUE);
-        }
-        else {
-            age = 0;
-            foodLevel = RABBIT_FOOD_VALUE;
-        }
+        this(randomAge, field, field.indexOf(location));
     }
 
     /**
-     * This is what the hawk does most of the time: it hunts for
-     * squirrels. In the process, it might breed, die of hunger,
-     * or die of old age.
+     * Create a hawk. A hawk can be created as a new born (age zero
+     * and not hungry) or with a random age and food level.
+     *
+     * @param randomAge If true, the hawk will have random age and hunger level.
      * @param field The field currently occupied.
-     * @param newHawks A list to return newly born hawkes.
+     * @param cell The index of the cell within the field.
      */
-    public void act(List<Animal> newHawks)
+    public Hawk(boolean randomAge, Field field, int cell)
     {
-        incrementAge();
-        incrementHunger();
-        if(isAlive()) {
-            giveBirth(newHawks);
-            // Move towards a source of food if found.
-            Location newLocation = findFood();
-            if(newLocation == null) {
-                // No food found - try to move to a free location.
-                newLocation = getField().freeAdjacentLocation(getLocation());
-            }
-            // See if it was possible to move.
-            if(newLocation != null) {
-                setLocation(newLocation);
-            }
-            else {
-                // Overcrowding.
-                setDead();
-            }
-        }
+        this(randomAge, field, cell, SpeciesParameters.HAWK);
     }
 
     /**
-     * Increase the age. This could result in the hawk's death.
-     */
-    private void incrementAge()
-    {
-        age++;
-        if(age > MAX_AGE) {
-            setDead();
-        }
-    }
-
-    /**
-     * Make this hawk more hungry. This could result in the hawk's death.
-     */
-    private void incrementHunger()
-    {
-        foodLevel--;
-        if(foodLevel <= 0) {
-            setDead();
-        }
-    }
-
-    /**
-     * Look for squirrels adjacent to the current location.
-     * Only the first live squirrel is eaten.
-     * @return Where food was found, or null if it wasn't.
-     */
-    private Location findFood()
-    {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Squirrel) {
-                Squirrel squirrel = (Squirrel) animal;
-                if(squirrel.isAlive()) {
-                    squirrel.setDead();
-                    foodLevel = RABBIT_FOOD_VALUE;
-                    return where;
-                }
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Check whether or not this hawk is to give birth at this step.
-     * New births will be made into free adjacent locations.
-     * @param newHawks A list to return newly born hawkes.
+     * Create a hawk with the given characteristics. A hawk can be
+     * created as a new born (age zero and not hungry) or with a random
+     * age and food level.
+     *
+     * @param randomAge If true, the hawk will have random age and hunger level.
+     * @param field The field currently occupied.
+     * @param cell The index of the cell within the field.
+     * @param parameters The characteristics of hawks in this simulation.
      */
-    private void giveBirth(List<Animal> newHawks)
+    public Hawk(boolean randomAge, Field field, int cell, SpeciesParameters parameters)
     {
-        // New hawkes are born into adjacent locations.
-        // Get a list of adjacent free locations.
-        Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
-        int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
-            Hawk young = new Hawk(false, field, loc);
-            newHawks.add(young);
-        }
+        super(randomAge, field, cell, parameters, Squirrel.class);
     }
 
     /**
-     * Generate a number representing the number of births,
-     * if it can breed.
-     * @return The number of births (may be zero).
+     * Create a hawk of the given age and food level, as when a
+     * simulation is restored from a checkpoint.
+     * @param field The field currently occupied.
+     * @param cell The index of the cell within the field.
+     * @param age The hawk's age.
+     * @param foodLevel The hawk's food level.
+     * @param parameters The characteristics of hawks in this simulation.
      */
-    private int breed()
+    Hawk(Field field, int cell, int age, int foodLevel, SpeciesParameters parameters)
     {
-        int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
-        }
-        return births;
+        super(field, cell, age, foodLevel, parameters, Squirrel.class);
     }
 
     /**
-     * A hawk can breed if it has reached the breeding age.
+     * Create a new born hawk.
+     * @param field The field the new born occupies.
+     * @param cell The index of its cell.
+     * @return The new born.
      */
-    private boolean canBreed()
+    protected Predator newborn(Field field, int cell)
     {
-        return age >= BREEDING_AGE;
+        return new Hawk(false, field, cell, getParameters());
     }
 }
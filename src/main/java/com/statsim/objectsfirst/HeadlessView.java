@@ -0,0 +1,75 @@
+package com.statsim.objectsfirst;
+
+import java.awt.Color;
+
+/**
+ * A view of the simulation that draws nothing. It only reads the
+ * population counts needed to decide whether the simulation is still
+ * viable, so it can be used on machines without a display and for
+ * long batch runs where painting the grid would be wasted work.
+ * 
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class HeadlessView implements SimulatorView
+{
+    // A statistics object computing and storing simulation information
+    private FieldStats stats;
+    // The step most recently reported to this view.
+    private int step;
+
+    /**
+     * Create a headless view.
+     */
+    public HeadlessView()
+    {
+        stats = new FieldStats();
+    }
+
+    /**
+     * Colors are not used by a headless view.
+     * @param animalClass The animal's Class object.
+     * @param color The color to be used for the given class.
+     */
+    public void setColor(Class<?> animalClass, Color color)
+    {
+    }
+
+    /**
+     * Record the end of a step. There is nothing to count: the
+     * field keeps the population of every species up to date.
+     * @param step Which iteration step it is.
+     * @param field The field whose status is to be recorded.
+     */
+    public void showStatus(int step, Field field)
+    {
+        this.step = step;
+    }
+
+    /**
+     * Determine whether the simulation should continue to run.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable(Field field)
+    {
+        return stats.isViable(field);
+    }
+
+    /**
+     * Get details of what is in the field.
+     * @param field The field to describe.
+     * @return A string describing the population of the field.
+     */
+    public String getPopulationDetails(Field field)
+    {
+        return stats.getPopulationDetails(field);
+    }
+
+    /**
+     * @return The step most recently reported to this view.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+}
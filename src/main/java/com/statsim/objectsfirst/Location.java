@@ -47,14 +47,19 @@ public class Location
     }
     
     /**
-     * Use the top 16 bits for the row value and the bottom for
-     * the column. Except for very big grids, this should give a
-     * unique hash code for each (row, col) pair.
+     * Number the (row, col) pairs diagonal by diagonal (the Cantor
+     * pairing). Every location with row + col below 92681 has its own
+     * hash code, whatever the shape of the grid; beyond that, as in a
+     * field 10 deep and 100000 wide, hash codes may collide. Locations
+     * made by the constructor must hash like the field's own, so the
+     * hash cannot depend on the width of a field.
      * @return A hashcode for the location.
      */
     public int hashCode()
     {
-        return (row << 16) + col;
+        long diagonal = (long) row + col;
+        long pair = diagonal * (diagonal + 1) / 2 + col;
+        return (int) (pair ^ (pair >>> 32));
     }
     
     /**
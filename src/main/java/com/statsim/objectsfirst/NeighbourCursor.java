@@ -0,0 +1,168 @@
+package com.statsim.objectsfirst;
+
+import java.util.Random;
+
+/**
+ * A reusable cursor over the cells adjacent to a given cell of a
+ * rectangular grid, visited in random order. Cells are identified by
+ * their index, row * width + col.
+ *
+ * The neighbours of a cell are found from precomputed offset tables,
+ * one per combination of grid edges the cell touches, and shuffled in
+ * place, so positioning the cursor allocates nothing. The neighbours
+ * start out in the same order as Field.adjacentLocations builds them
+ * and are shuffled with the same swaps as Collections.shuffle, so the
+ * random order is the one Hawk and Squirrel have always relied on.
+ *
+ * The eight directions are numbered 0 to 7: the row above from left
+ * to right, then left and right, then the row below. Field describes
+ * the neighbours of a cell by masks with a bit per direction, and
+ * nextIn skips straight to the next neighbour in such a mask.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class NeighbourCursor
+{
+    // Edge flags: the cell is in the top or bottom row, or in the
+    // leftmost or rightmost column.
+    private static final int TOP = 1, BOTTOM = 2, LEFT = 4, RIGHT = 8;
+    // The row and column offsets of the eight directions, in the order
+    // in which Field.adjacentLocations has always listed them.
+    private static final int[] ROW_OFFSETS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+    private static final int[] COL_OFFSETS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+    // For every combination of edge flags, the directions that stay
+    // within the grid.
+    private static final int[][] DIRECTIONS = new int[16][];
+
+    static {
+        for(int edges = 0; edges < DIRECTIONS.length; edges++) {
+            int[] valid = new int[8];
+            int n = 0;
+            for(int dir = 0; dir < 8; dir++) {
+                boolean offGrid = (ROW_OFFSETS[dir] < 0 && (edges & TOP) != 0)
+                               || (ROW_OFFSETS[dir] > 0 && (edges & BOTTOM) != 0)
+                               || (COL_OFFSETS[dir] < 0 && (edges & LEFT) != 0)
+                               || (COL_OFFSETS[dir] > 0 && (edges & RIGHT) != 0);
+                if(!offGrid) {
+                    valid[n++] = dir;
+                }
+            }
+            DIRECTIONS[edges] = new int[n];
+            System.arraycopy(valid, 0, DIRECTIONS[edges], 0, n);
+        }
+    }
+
+    // The depth and width of the grid.
+    private final int depth, width;
+    // The difference in cell index for each of the eight directions.
+    private final int[] offsets;
+    // The random number generator used to shuffle the neighbours.
+    private final Random rand;
+    // The directions of the neighbours of the current cell, in random order.
+    private final int[] directions;
+    // The current cell.
+    private int centre;
+    // The number of neighbours of the current cell.
+    private int count;
+    // The position of the next neighbour to be returned.
+    private int position;
+
+    /**
+     * Create a cursor for a grid of the given size.
+     * @param depth The depth of the grid.
+     * @param width The width of the grid.
+     * @param rand The random number generator used for shuffling.
+     */
+    public NeighbourCursor(int depth, int width, Random rand)
+    {
+        this.depth = depth;
+        this.width = width;
+        this.rand = rand;
+        offsets = new int[8];
+        for(int dir = 0; dir < 8; dir++) {
+            offsets[dir] = ROW_OFFSETS[dir] * width + COL_OFFSETS[dir];
+        }
+        directions = new int[8];
+    }
+
+    /**
+     * Position the cursor at the neighbours of the given cell, in a
+     * new random order.
+     * @param cell The cell whose neighbours are to be visited.
+     * @return This cursor.
+     */
+    public NeighbourCursor reset(int cell)
+    {
+        int row = cell / width;
+        int col = cell - row * width;
+        int edges = 0;
+        if(row == 0) {
+            edges |= TOP;
+        }
+        if(row == depth - 1) {
+            edges |= BOTTOM;
+        }
+        if(col == 0) {
+            edges |= LEFT;
+        }
+        if(col == width - 1) {
+            edges |= RIGHT;
+        }
+        int[] valid = DIRECTIONS[edges];
+        count = valid.length;
+        System.arraycopy(valid, 0, directions, 0, count);
+        // The same swaps, in the same order, as Collections.shuffle.
+        for(int i = count; i > 1; i--) {
+            int j = rand.nextInt(i);
+            int tmp = directions[i - 1];
+            directions[i - 1] = directions[j];
+            directions[j] = tmp;
+        }
+        centre = cell;
+        position = 0;
+        return this;
+    }
+
+    /**
+     * @return Whether there are neighbours left to visit.
+     */
+    public boolean hasNext()
+    {
+        return position < count;
+    }
+
+    /**
+     * @return The next neighbour.
+     */
+    public int next()
+    {
+        return centre + offsets[directions[position++]];
+    }
+
+    /**
+     * Skip to the next neighbour in one of the given directions.
+     * @param mask A bit for each direction wanted, such as a mask
+     *             from Field.freeNeighbourMask.
+     * @return The neighbour, or -1 if no neighbour left lies in one
+     *         of the directions.
+     */
+    public int nextIn(int mask)
+    {
+        while(position < count) {
+            int dir = directions[position++];
+            if((mask & 1 << dir) != 0) {
+                return centre + offsets[dir];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of neighbours of the current cell.
+     */
+    public int size()
+    {
+        return count;
+    }
+}
@@ -0,0 +1,414 @@
+package com.statsim.objectsfirst;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * The occupancy bitboards of a field: for each species code, one bit
+ * per cell set where the cell holds that species, and for EMPTY, one
+ * bit per cell set where the cell holds any species. A board is read a
+ * 64-bit word at a time; word w of a row holds columns 64w to 64w + 63,
+ * lowest bit first, so every row starts on a new word.
+ *
+ * The boards are laid out like the cells they describe. Alongside flat
+ * storage they are flat arrays on the heap. Alongside chunked storage
+ * they are kept in blocks of 64 by 64 cells, allocated when the first
+ * occupant arrives and freed when the last one leaves, so they too
+ * follow the occupied area. Alongside off-heap storage they are kept
+ * in direct buffers, so the garbage collector does not see them either.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+abstract class Occupancy
+{
+    // The number of species codes, including EMPTY.
+    protected static final int CODES = 256;
+
+    // The number of rows of cells.
+    protected final int depth;
+    // The number of words holding one row of a board.
+    protected final int rowWords;
+
+    /**
+     * Create the boards of a field, still to be added.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    protected Occupancy(int depth, int width)
+    {
+        this.depth = depth;
+        this.rowWords = (width + 63) / 64;
+    }
+
+    /**
+     * Create empty boards laid out like the given storage, with the
+     * board of all occupants already added.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param cells The storage of the field's cells.
+     * @return The boards.
+     */
+    static Occupancy forStorage(int depth, int width, CellStorage cells)
+    {
+        Occupancy occupancy;
+        if(cells instanceof ChunkedCellStorage) {
+            occupancy = new Chunked(depth, width);
+        }
+        else if(cells instanceof OffHeapCellStorage) {
+            occupancy = new Direct(depth, width);
+        }
+        else {
+            occupancy = new Flat(depth, width);
+        }
+        occupancy.addBoard(Field.EMPTY);
+        return occupancy;
+    }
+
+    /**
+     * @return The number of words holding one row of a board.
+     */
+    int getRowWords()
+    {
+        return rowWords;
+    }
+
+    /**
+     * Add the board of a species code, if it has none yet.
+     * @param code The species code, or EMPTY for all occupants.
+     */
+    abstract void addBoard(int code);
+
+    /**
+     * @param code A species code.
+     * @return Whether the code has a board.
+     */
+    abstract boolean hasBoard(int code);
+
+    /**
+     * Read a word of a board.
+     * @param code The species code of the board, or EMPTY for all occupants.
+     * @param row The row.
+     * @param word The word within the row.
+     * @return The bits of 64 cells of the row.
+     */
+    abstract long word(int code, int row, int word);
+
+    /**
+     * Bring the boards up to date with a change of occupant. Threads
+     * may do this at once for cells in different 64 by 64 blocks.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param previous The species code the cell held, or EMPTY.
+     * @param code The species code it holds now, or EMPTY; not previous.
+     */
+    abstract void update(int row, int col, int previous, int code);
+
+    /**
+     * Clear every board.
+     */
+    abstract void clear();
+
+    /**
+     * @return The number of bytes currently taken by the boards.
+     */
+    abstract long getAllocatedBytes();
+
+    /**
+     * Boards as flat arrays of words, a word for every 64 cells of a row.
+     */
+    private static class Flat extends Occupancy
+    {
+        // The words of each board, or null where a code has none.
+        private final long[][] boards = new long[CODES][];
+
+        /**
+         * Create the boards of a field, as flat arrays.
+         * @param depth The depth of the field.
+         * @param width The width of the field.
+         */
+        Flat(int depth, int width)
+        {
+            super(depth, width);
+        }
+
+        @Override
+        void addBoard(int code)
+        {
+            if(boards[code] == null) {
+                boards[code] = new long[depth * rowWords];
+            }
+        }
+
+        @Override
+        boolean hasBoard(int code)
+        {
+            return boards[code] != null;
+        }
+
+        @Override
+        long word(int code, int row, int word)
+        {
+            return boards[code][row * rowWords + word];
+        }
+
+        @Override
+        void update(int row, int col, int previous, int code)
+        {
+            int word = row * rowWords + (col >>> 6);
+            long bit = 1L << col;
+            if(previous != Field.EMPTY) {
+                boards[previous][word] &= ~bit;
+            }
+            else {
+                boards[Field.EMPTY][word] |= bit;
+            }
+            if(code != Field.EMPTY) {
+                boards[code][word] |= bit;
+            }
+            else {
+                boards[Field.EMPTY][word] &= ~bit;
+            }
+        }
+
+        @Override
+        void clear()
+        {
+            for(long[] board : boards) {
+                if(board != null) {
+                    Arrays.fill(board, 0);
+                }
+            }
+        }
+
+        @Override
+        long getAllocatedBytes()
+        {
+            long bytes = 0;
+            for(long[] board : boards) {
+                if(board != null) {
+                    bytes += board.length * 8L;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Boards in blocks of 64 by 64 cells, one word per row of a block,
+     * allocated only where there are occupants.
+     */
+    private static class Chunked extends Occupancy
+    {
+        // The number of rows of cells in a block.
+        private static final int BLOCK_ROWS = 64;
+
+        // The number of blocks across the field.
+        private final int blocksAcross;
+        // The blocks of each board, row by row, with null for an empty
+        // block; or null where a code has no board.
+        private final long[][][] boards = new long[CODES][][];
+        // The number of occupants of each block.
+        private final int[] occupants;
+
+        /**
+         * Create the boards of a field, as blocks.
+         * @param depth The depth of the field.
+         * @param width The width of the field.
+         */
+        Chunked(int depth, int width)
+        {
+            super(depth, width);
+            blocksAcross = rowWords;
+            occupants = new int[blocksAcross * ((depth + BLOCK_ROWS - 1) / BLOCK_ROWS)];
+        }
+
+        @Override
+        void addBoard(int code)
+        {
+            if(boards[code] == null) {
+                boards[code] = new long[occupants.length][];
+            }
+        }
+
+        @Override
+        boolean hasBoard(int code)
+        {
+            return boards[code] != null;
+        }
+
+        @Override
+        long word(int code, int row, int word)
+        {
+            long[] block = boards[code][(row >> 6) * blocksAcross + word];
+            return block == null ? 0 : block[row & 63];
+        }
+
+        @Override
+        void update(int row, int col, int previous, int code)
+        {
+            int index = (row >> 6) * blocksAcross + (col >>> 6);
+            int offset = row & 63;
+            long bit = 1L << col;
+            if(previous != Field.EMPTY) {
+                boards[previous][index][offset] &= ~bit;
+            }
+            else {
+                block(Field.EMPTY, index)[offset] |= bit;
+                occupants[index]++;
+            }
+            if(code != Field.EMPTY) {
+                block(code, index)[offset] |= bit;
+            }
+            else {
+                boards[Field.EMPTY][index][offset] &= ~bit;
+                if(--occupants[index] == 0) {
+                    free(index);
+                }
+            }
+        }
+
+        @Override
+        void clear()
+        {
+            for(long[][] board : boards) {
+                if(board != null) {
+                    Arrays.fill(board, null);
+                }
+            }
+            Arrays.fill(occupants, 0);
+        }
+
+        @Override
+        long getAllocatedBytes()
+        {
+            long bytes = occupants.length * 4L;
+            for(long[][] board : boards) {
+                if(board != null) {
+                    bytes += board.length * 4L;
+                    for(long[] block : board) {
+                        if(block != null) {
+                            bytes += BLOCK_ROWS * 8;
+                        }
+                    }
+                }
+            }
+            return bytes;
+        }
+
+        /**
+         * Return a block of a board, allocating it if it is empty.
+         * @param code The species code of the board.
+         * @param index The index of the block.
+         * @return The block.
+         */
+        private long[] block(int code, int index)
+        {
+            long[] block = boards[code][index];
+            if(block == null) {
+                block = new long[BLOCK_ROWS];
+                boards[code][index] = block;
+            }
+            return block;
+        }
+
+        /**
+         * Free a block of every board, once it has no occupants left.
+         * @param index The index of the block.
+         */
+        private void free(int index)
+        {
+            for(long[][] board : boards) {
+                if(board != null) {
+                    board[index] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Boards as flat runs of words in direct buffers, outside the heap.
+     */
+    private static class Direct extends Occupancy
+    {
+        // The words of each board, or null where a code has none.
+        private final LongBuffer[] boards = new LongBuffer[CODES];
+
+        /**
+         * Create the boards of a field, as direct buffers.
+         * @param depth The depth of the field.
+         * @param width The width of the field.
+         */
+        Direct(int depth, int width)
+        {
+            super(depth, width);
+        }
+
+        @Override
+        void addBoard(int code)
+        {
+            if(boards[code] == null) {
+                boards[code] = ByteBuffer.allocateDirect(Math.multiplyExact(depth * rowWords, 8))
+                                         .order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+        }
+
+        @Override
+        boolean hasBoard(int code)
+        {
+            return boards[code] != null;
+        }
+
+        @Override
+        long word(int code, int row, int word)
+        {
+            return boards[code].get(row * rowWords + word);
+        }
+
+        @Override
+        void update(int row, int col, int previous, int code)
+        {
+            int word = row * rowWords + (col >>> 6);
+            long bit = 1L << col;
+            LongBuffer all = boards[Field.EMPTY];
+            if(previous != Field.EMPTY) {
+                boards[previous].put(word, boards[previous].get(word) & ~bit);
+            }
+            else {
+                all.put(word, all.get(word) | bit);
+            }
+            if(code != Field.EMPTY) {
+                boards[code].put(word, boards[code].get(word) | bit);
+            }
+            else {
+                all.put(word, all.get(word) & ~bit);
+            }
+        }
+
+        @Override
+        void clear()
+        {
+            for(LongBuffer board : boards) {
+                if(board != null) {
+                    for(int word = 0; word < board.limit(); word++) {
+                        board.put(word, 0L);
+                    }
+                }
+            }
+        }
+
+        @Override
+        long getAllocatedBytes()
+        {
+            long bytes = 0;
+            for(LongBuffer board : boards) {
+                if(board != null) {
+                    bytes += board.limit() * 8L;
+                }
+            }
+            return bytes;
+        }
+    }
+}
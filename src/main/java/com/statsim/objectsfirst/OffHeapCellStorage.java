@@ -0,0 +1,265 @@
+package com.statsim.objectsfirst;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cell storage outside the Java heap, so that the garbage collector
+ * does not have to scan or copy the cells of a very large field.
+ *
+ * The species codes and handles are kept in two regions of direct or
+ * memory-mapped buffers, addressed by cell index and split into
+ * segments of SEGMENT_CELLS cells, since a single buffer cannot exceed
+ * 2GB. Direct buffers count against the limit set by
+ * -XX:MaxDirectMemorySize; mapped ones do not. A mapped storage is
+ * backed by a file that doubles as a snapshot of the grid: flush()
+ * writes the changed pages out, and mapping the same file again later
+ * gives back the same cells, which Field.load turns back into a field.
+ * The file only records the species code and handle of every cell, so
+ * loading it needs the names of the species in the order of their
+ * codes, and the animals behind the handles are not part of it; a
+ * simulation given the storage starts afresh and empties it, like any
+ * other.
+ *
+ * The file starts with a header of HEADER_SIZE bytes (magic number and
+ * cell count), followed by one byte per cell for the species codes and,
+ * from the next multiple of eight bytes, four bytes per cell for the
+ * handles, all little-endian.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class OffHeapCellStorage implements CellStorage, Closeable
+{
+    // The number of cells in each segment of the buffers.
+    public static final int SEGMENT_CELLS = 1 << 28;
+    // The magic number at the start of a mapped file: "PPCELLS1".
+    private static final long MAGIC = 0x31534c4c45435050L;
+    // The number of bytes before the species codes in a mapped file.
+    private static final int HEADER_SIZE = 16;
+    // The number of bits to shift a cell index by to find its segment.
+    private static final int SEGMENT_SHIFT = 28;
+    // The mask giving the position of a cell within its segment.
+    private static final int SEGMENT_MASK = SEGMENT_CELLS - 1;
+
+    // The number of cells.
+    private final int cellCount;
+    // The species code of each cell, segment by segment.
+    private final ByteBuffer[] species;
+    // The handle of each cell, segment by segment.
+    private final ByteBuffer[] handles;
+    // The file the buffers are mapped from, or null for direct buffers.
+    private final FileChannel channel;
+
+    /**
+     * Create storage in direct buffers for the given number of cells,
+     * all empty. The storage is not kept when the program ends.
+     * @param cellCount The number of cells.
+     * @return The storage.
+     */
+    public static OffHeapCellStorage allocate(int cellCount)
+    {
+        int segments = segmentCount(cellCount);
+        ByteBuffer[] species = new ByteBuffer[segments];
+        ByteBuffer[] handles = new ByteBuffer[segments];
+        for(int s = 0; s < segments; s++) {
+            int cells = segmentSize(cellCount, s);
+            species[s] = ByteBuffer.allocateDirect(cells);
+            handles[s] = ByteBuffer.allocateDirect(cells * 4).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new OffHeapCellStorage(cellCount, species, handles, null);
+    }
+
+    /**
+     * Create storage mapped from a file. If the file holds the cells of
+     * an earlier storage of the same size, they are kept; otherwise the
+     * file is created, or overwritten, with every cell empty.
+     * @param path The file to map.
+     * @param cellCount The number of cells.
+     * @return The storage.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static OffHeapCellStorage map(Path path, int cellCount) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long handlesStart = handlesStart(cellCount);
+            long size = handlesStart + cellCount * 4L;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            boolean existing = channel.size() == size && channel.read(header, 0) == HEADER_SIZE
+                               && header.getLong(0) == MAGIC && header.getLong(8) == cellCount;
+            if(!existing) {
+                // Truncating first discards old contents, so every cell
+                // reads as empty once the file is extended again.
+                channel.truncate(0);
+                header.clear();
+                header.putLong(0, MAGIC).putLong(8, cellCount);
+                channel.write(header, 0);
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+            int segments = segmentCount(cellCount);
+            ByteBuffer[] species = new ByteBuffer[segments];
+            ByteBuffer[] handles = new ByteBuffer[segments];
+            for(int s = 0; s < segments; s++) {
+                long first = (long) s * SEGMENT_CELLS;
+                int cells = segmentSize(cellCount, s);
+                species[s] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first, cells);
+                handles[s] = channel.map(FileChannel.MapMode.READ_WRITE, handlesStart + first * 4, cells * 4L)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new OffHeapCellStorage(cellCount, species, handles, channel);
+        }
+        catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Create storage from its buffers.
+     * @param cellCount The number of cells.
+     * @param species The species code buffers.
+     * @param handles The handle buffers.
+     * @param channel The file mapped, or null.
+     */
+    private OffHeapCellStorage(int cellCount, ByteBuffer[] species, ByteBuffer[] handles,
+                               FileChannel channel)
+    {
+        this.cellCount = cellCount;
+        this.species = species;
+        this.handles = handles;
+        this.channel = channel;
+    }
+
+    @Override
+    public int getSpecies(int cell)
+    {
+        return species[cell >>> SEGMENT_SHIFT].get(cell & SEGMENT_MASK) & 0xff;
+    }
+
+    @Override
+    public int getHandle(int cell)
+    {
+        return handles[cell >>> SEGMENT_SHIFT].getInt((cell & SEGMENT_MASK) << 2);
+    }
+
+    @Override
+    public void set(int cell, int speciesCode, int handle)
+    {
+        int segment = cell >>> SEGMENT_SHIFT;
+        int offset = cell & SEGMENT_MASK;
+        species[segment].put(offset, (byte) speciesCode);
+        handles[segment].putInt(offset << 2, handle);
+    }
+
+    @Override
+    public void setHandle(int cell, int handle)
+    {
+        handles[cell >>> SEGMENT_SHIFT].putInt((cell & SEGMENT_MASK) << 2, handle);
+    }
+
+    @Override
+    public void clear()
+    {
+        for(int s = 0; s < species.length; s++) {
+            fill(species[s]);
+            fill(handles[s]);
+        }
+    }
+
+    @Override
+    public long getAllocatedBytes()
+    {
+        return cellCount * 5L;
+    }
+
+    /**
+     * Return whether the storage is mapped from a file.
+     * @return true if the cells are kept in a file.
+     */
+    public boolean isMapped()
+    {
+        return channel != null;
+    }
+
+    /**
+     * Write any changed cells out to the mapped file, so that the file
+     * holds a snapshot of the grid as it is now. Does nothing for
+     * storage in direct buffers. The caller must make sure no other
+     * thread changes the cells meanwhile.
+     */
+    public void flush()
+    {
+        if(channel != null) {
+            for(int s = 0; s < species.length; s++) {
+                ((MappedByteBuffer) species[s]).force();
+                ((MappedByteBuffer) handles[s]).force();
+            }
+        }
+    }
+
+    /**
+     * Flush the cells and close the mapped file. The storage must not
+     * be used afterwards.
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if(channel != null) {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Set every byte of a buffer to zero.
+     * @param buffer The buffer.
+     */
+    private static void fill(ByteBuffer buffer)
+    {
+        int limit = buffer.limit();
+        int i = 0;
+        for(; i + 8 <= limit; i += 8) {
+            buffer.putLong(i, 0L);
+        }
+        for(; i < limit; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    /**
+     * @param cellCount The number of cells.
+     * @return The number of segments needed for that many cells.
+     */
+    private static int segmentCount(int cellCount)
+    {
+        return (int) (((long) cellCount + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param cellCount The number of cells.
+     * @param segment A segment.
+     * @return The number of cells in that segment.
+     */
+    private static int segmentSize(int cellCount, int segment)
+    {
+        return (int) Math.min(SEGMENT_CELLS, cellCount - (long) segment * SEGMENT_CELLS);
+    }
+
+    /**
+     * @param cellCount The number of cells.
+     * @return The position of the handles in a mapped file.
+     */
+    private static long handlesStart(int cellCount)
+    {
+        return (HEADER_SIZE + (long) cellCount + 7) & ~7L;
+    }
+}
@@ -0,0 +1,1517 @@
+package com.statsim.objectsfirst;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A predator-prey simulator that keeps its animals in an AnimalStore
+ * instead of as one object per animal. The field holds, for every
+ * occupied cell, the species code and store handle of its occupant.
+ *
+ * The species are the rows of a SpeciesTable, hawks and squirrels
+ * unless it is given another table. There is one kernel per kind of
+ * behaviour: prey behave as in Squirrel.act, and predators as in
+ * Hawk.act, eating whatever the table says they eat. Each kernel reads
+ * its species' characteristics from arrays indexed by species code, so
+ * a new species is only a new row. Hawks and squirrels behave exactly
+ * as in Simulator, and random numbers are drawn in the same order, so
+ * that with the same seed this simulator follows the same course.
+ * It is meant for large runs, and reports to a headless view unless
+ * it is given another one.
+ *
+ * By default the animals act in store order, one after another, as
+ * in Simulator. Optionally, see setTiled, they act tile by tile, on as
+ * many threads as setParallelism allows, with the same results
+ * whatever the number of threads.
+ *
+ * Optionally, see setScheduledDeaths, deaths from old age and
+ * starvation can be scheduled on a timing wheel instead of being
+ * checked by every animal on every step.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class PackedSimulator
+{
+    // The species code of a hawk, the first row of the default species table.
+    public static final int HAWK = 1;
+    // The species code of a squirrel, the second row of the default species table.
+    public static final int SQUIRREL = 2;
+    // The behaviour of a dead animal, which does nothing.
+    private static final int NO_BEHAVIOUR = -1;
+    // The starvation step of an animal that never starves.
+    private static final int NEVER = Integer.MAX_VALUE;
+    // The default width for the grid.
+    private static final int DEFAULT_WIDTH = 100;
+    // The default depth of the grid.
+    private static final int DEFAULT_DEPTH = 100;
+    // The width and depth of the square tiles the field is split into
+    // for parallel stepping, as a power of two. It must be a multiple
+    // of 64, and at least 128, so that tiles stepped at once never
+    // share a 64 by 64 block of the field's bitboards or chunked storage.
+    private static final int TILE_SHIFT = 7;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    // The fewest animals in a block of the store sorted by one thread.
+    private static final int SORT_BLOCK = 4096;
+    // The most tiles handled by one thread at a time when sorting.
+    private static final int TILE_GRAIN = 256;
+
+    // The animals in the field.
+    private AnimalStore animals;
+    // The store the animals are sorted into when tiled, which then
+    // swaps places with animals.
+    private AnimalStore sortedAnimals;
+    // The current state of the field.
+    private Field field;
+    // The current step of the simulation.
+    private int step;
+    // The random number generator of this simulation.
+    private SplitMixRandom rand;
+    // The configuration of this simulation, or null if it was given a
+    // species table of its own.
+    private SimulationParameters parameters;
+    // The species of this simulation.
+    private SpeciesTable table;
+    // The number of species codes, including AnimalStore.DEAD.
+    private int speciesCodes;
+    // The behaviour of each species code, from the table.
+    private int[] behaviours;
+    // The characteristics of each species code, from the table.
+    private SpeciesParameters[] characteristics;
+    // The species codes each species code eats, from the table.
+    private int[][] preyCodes;
+    // A view of the simulation, graphical or not.
+    private SimulatorView view;
+    // The seed from which the random streams of tiled steps are derived.
+    private long seed;
+    // The worker used for steps in store order.
+    private Worker serialWorker;
+    // The number of threads tiled steps run on.
+    private int parallelism;
+    // The threads tiled steps run on, or null for steps in store order.
+    private ForkJoinPool pool;
+    // The number of tiles across the field, and in total.
+    private int tilesAcross, tileCount;
+    // The worker of each tile.
+    private Worker[] workers;
+    // The tiles of each of the four colours.
+    private int[][] phaseTiles;
+    // For each tile, the handle of its first animal, and after the
+    // last tile the number of animals; valid while the store is sorted.
+    private int[] tileStart;
+    // Whether the animals are sorted by tile, as sortByTile left them.
+    private boolean sorted;
+    // The tile of each animal, while sorting.
+    private int[] animalTiles;
+    // For each block of the store being sorted and each tile, the
+    // number of the block's animals in the tile, and then where the
+    // next of them goes within the tile.
+    private int[] blockCounts;
+    // The deaths from old age and starvation to come, or null if every
+    // animal ages and gets hungrier as it acts.
+    private DeathWheel wheel;
+    // The new handle of each animal after compaction or sorting, when
+    // scheduling deaths.
+    private int[] newHandles;
+
+    /**
+     * Construct a simulation field with default size, drawing from the
+     * shared generator of Randomizer, which is for one thread only.
+     */
+    public PackedSimulator()
+    {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH);
+    }
+
+    /**
+     * Create a simulation field with the given size.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     */
+    public PackedSimulator(int depth, int width)
+    {
+        this(depth, width, new HeadlessView());
+    }
+
+    /**
+     * Create a simulation field with the given size, reporting to
+     * the given view.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to.
+     */
+    public PackedSimulator(int depth, int width, SimulatorView view)
+    {
+        this(depth, width, view, null);
+    }
+
+    /**
+     * Create a simulation field with the given size whose cells are
+     * kept in the given storage, reporting to the given view. Steps in
+     * store order draw from the shared generator of Randomizer, so the
+     * simulation must not run at the same time as another simulation
+     * that does; give each its own seed instead.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to.
+     * @param cells Empty storage for depth * width cells, such as a
+     *              ChunkedCellStorage for a large, sparse field, or
+     *              null for flat arrays.
+     */
+    public PackedSimulator(int depth, int width, SimulatorView view, CellStorage cells)
+    {
+        this(depth, width, view, SimulationParameters.DEFAULT,
+             SpeciesTable.of(SimulationParameters.DEFAULT),
+             Randomizer.getRandom(), Randomizer.getSeed(), cells);
+    }
+
+    /**
+     * Create a simulation field with the given size and configuration,
+     * reporting to the given view. The simulation has its own random
+     * number generator, started from the given seed, which is also the
+     * seed of the random streams of parallel steps.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to.
+     * @param parameters The configuration of the simulation.
+     * @param seed The seed of the simulation's random number generator.
+     */
+    public PackedSimulator(int depth, int width, SimulatorView view,
+                           SimulationParameters parameters, long seed)
+    {
+        this(depth, width, view, parameters, seed, null);
+    }
+
+    /**
+     * Create a simulation field with the given size and configuration
+     * whose cells are kept in the given storage, reporting to the given
+     * view. The simulation has its own random number generator, started
+     * from the given seed, which is also the seed of the random streams
+     * of parallel steps.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to.
+     * @param parameters The configuration of the simulation.
+     * @param seed The seed of the simulation's random number generator.
+     * @param cells Empty storage for depth * width cells, or null for
+     *              flat arrays.
+     */
+    public PackedSimulator(int depth, int width, SimulatorView view,
+                           SimulationParameters parameters, long seed, CellStorage cells)
+    {
+        this(depth, width, view, parameters, SpeciesTable.of(parameters),
+             new SplitMixRandom(seed), seed, cells);
+    }
+
+    /**
+     * Create a simulation field with the given size and species,
+     * reporting to the given view. The simulation has its own random
+     * number generator, started from the given seed, which is also the
+     * seed of the random streams of parallel steps. Such a simulation
+     * cannot be checkpointed.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to.
+     * @param table The species of the simulation.
+     * @param seed The seed of the simulation's random number generator.
+     */
+    public PackedSimulator(int depth, int width, SimulatorView view,
+                           SpeciesTable table, long seed)
+    {
+        this(depth, width, view, table, seed, null);
+    }
+
+    /**
+     * Create a simulation field with the given size and species whose
+     * cells are kept in the given storage, reporting to the given view.
+     * Such a simulation cannot be checkpointed.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to.
+     * @param table The species of the simulation.
+     * @param seed The seed of the simulation's random number generator.
+     * @param cells Empty storage for depth * width cells, or null for
+     *              flat arrays.
+     */
+    public PackedSimulator(int depth, int width, SimulatorView view,
+                           SpeciesTable table, long seed, CellStorage cells)
+    {
+        this(depth, width, view, null, table, new SplitMixRandom(seed), seed, cells);
+    }
+
+    /**
+     * Create a simulation field with the given size and configuration,
+     * drawing from the given random number generator.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to.
+     * @param parameters The configuration of the simulation, or null.
+     * @param table The species of the simulation.
+     * @param rand The random number generator for serial steps.
+     * @param seed The seed of the random streams of parallel steps.
+     * @param cells Storage for the cells, or null for flat arrays.
+     */
+    private PackedSimulator(int depth, int width, SimulatorView view,
+                            SimulationParameters parameters, SpeciesTable table,
+                            SplitMixRandom rand, long seed, CellStorage cells)
+    {
+        if(cells != null && (width <= 0 || depth <= 0)) {
+            throw new IllegalArgumentException("The dimensions of a field with its own storage"
+                                               + " must be greater than zero.");
+        }
+        if(width <= 0 || depth <= 0) {
+            System.out.println("The dimensions must be greater than zero.");
+            System.out.println("Using default values.");
+            depth = DEFAULT_DEPTH;
+            width = DEFAULT_WIDTH;
+        }
+        this.parameters = parameters;
+        this.rand = rand;
+        this.seed = seed;
+        animals = new AnimalStore();
+        field = cells == null ? new Field(depth, width, rand) : new Field(depth, width, rand, cells);
+        setSpecies(table);
+        serialWorker = new Worker(rand, false);
+        parallelism = 1;
+        this.view = view;
+        view.setColor(Squirrel.class, Color.GREEN);
+        view.setColor(Hawk.class, Color.RED);
+        reset();
+    }
+
+    /**
+     * Register the species of a table in the field, which must not
+     * have any yet, and lay out their behaviour for the kernels.
+     * @param table The species.
+     */
+    private void setSpecies(SpeciesTable table)
+    {
+        this.table = table;
+        speciesCodes = table.size() + 1;
+        behaviours = new int[speciesCodes];
+        characteristics = new SpeciesParameters[speciesCodes];
+        preyCodes = new int[speciesCodes][];
+        behaviours[AnimalStore.DEAD] = NO_BEHAVIOUR;
+        for(int row = 0; row < table.size(); row++) {
+            Class<?> animalClass = table.getAnimalClass(row);
+            int code = animalClass != null ? field.registerSpecies(animalClass)
+                                           : field.registerSpecies(table.getName(row));
+            if(code != row + 1) {
+                throw new IllegalArgumentException("The species of " + table.getName(row)
+                                                   + " is already in the table.");
+            }
+            behaviours[code] = table.getBehaviour(row);
+            characteristics[code] = table.getParameters(row);
+            int[] prey = table.getPrey(row);
+            preyCodes[code] = new int[prey.length];
+            for(int i = 0; i < prey.length; i++) {
+                preyCodes[code][i] = prey[i] + 1;
+            }
+        }
+    }
+
+    /**
+     * Run the simulation from its current state for the given number of steps.
+     * Stop before the given number of steps if it ceases to be viable.
+     * @param numSteps The number of steps to run for.
+     */
+    public void simulate(int numSteps)
+    {
+        for(int n = 1; n <= numSteps && isViable(); n++) {
+            simulateOneStep();
+        }
+    }
+
+    /**
+     * Run the simulation from its current state for a single step.
+     * Every animal alive at the start of the step acts once; animals
+     * born during the step act from the next step on. The animals act
+     * in the order of the store, or tile by tile; see setTiled.
+     */
+    public void simulateOneStep()
+    {
+        step++;
+        field.getEvents().reset();
+        if(wheel != null) {
+            dieOnSchedule();
+        }
+        if(pool == null) {
+            int end = animals.size();
+            for(int handle = 0; handle < end; handle++) {
+                serialWorker.act(handle);
+            }
+            serialWorker.commitCounts();
+        }
+        else {
+            actInTiles();
+        }
+        StepMetrics metrics = field.getMetrics();
+        long time = metrics.start();
+        if(pool != null) {
+            sortByTile();
+        }
+        else if(wheel != null) {
+            if(newHandles == null || newHandles.length < animals.size()) {
+                newHandles = new int[Math.max(animals.size(), 1024) * 2];
+            }
+            animals.compact(field, newHandles);
+            wheel.remap(newHandles);
+        }
+        else {
+            animals.compact(field);
+        }
+        time = metrics.lap(StepMetrics.REMOVAL, time);
+
+        view.showStatus(step, field);
+        metrics.lap(StepMetrics.PAINTING, time);
+        metrics.endStep(field.getEvents(), field.getSpeciesCodes());
+    }
+
+    /**
+     * Choose the order in which the animals act. By default they act
+     * in store order, one after another on the calling thread, exactly
+     * as in Simulator, so that with the same seed both follow the same
+     * course.
+     *
+     * Tiled, the field is split into tiles that are processed at the
+     * same time, on as many threads as setParallelism allows, each with
+     * its own random stream derived from the seed, the step and the
+     * tile. The animals in each tile act in store order, and at the
+     * end of every step the store is sorted by tile. The overall order
+     * differs, so the course of the simulation is different, though
+     * statistically equivalent. It does not depend on the number of
+     * threads: runs with the same seed are identical on one thread or
+     * on sixty-four.
+     * @param tiled Whether to step tile by tile.
+     */
+    public void setTiled(boolean tiled)
+    {
+        if(tiled && pool == null) {
+            int depth = field.getDepth();
+            int width = field.getWidth();
+            tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+            int tilesDown = (depth + TILE_SIZE - 1) / TILE_SIZE;
+            tileCount = tilesAcross * tilesDown;
+            workers = new Worker[tileCount];
+            int[] colourSizes = new int[4];
+            for(int tile = 0; tile < tileCount; tile++) {
+                workers[tile] = new Worker(new SplitMixRandom(seed), true);
+                colourSizes[colourOf(tile)]++;
+            }
+            phaseTiles = new int[4][];
+            for(int colour = 0; colour < 4; colour++) {
+                phaseTiles[colour] = new int[colourSizes[colour]];
+                colourSizes[colour] = 0;
+            }
+            for(int tile = 0; tile < tileCount; tile++) {
+                int colour = colourOf(tile);
+                phaseTiles[colour][colourSizes[colour]++] = tile;
+            }
+            tileStart = new int[tileCount + 1];
+            sortedAnimals = new AnimalStore();
+            sorted = false;
+            pool = new ForkJoinPool(parallelism);
+        }
+        else if(!tiled && pool != null) {
+            pool.shutdown();
+            pool = null;
+            workers = null;
+            phaseTiles = null;
+            tileStart = null;
+            sortedAnimals = null;
+            animalTiles = null;
+            blockCounts = null;
+        }
+    }
+
+    /**
+     * Set the number of threads tiled steps run on. It makes no
+     * difference to the course of the simulation, and none to steps
+     * in store order, which always run on the calling thread.
+     * @param threads The number of threads to use, at least one.
+     */
+    public void setParallelism(int threads)
+    {
+        if(threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread.");
+        }
+        parallelism = threads;
+        if(pool != null) {
+            pool.shutdown();
+            pool = new ForkJoinPool(threads);
+        }
+    }
+
+    /**
+     * Choose how animals die of old age and starvation. By default,
+     * as in Hawk and Squirrel, every animal counts its age and food
+     * level up and down as it acts, and dies when either runs out.
+     *
+     * With scheduled deaths, the store holds each animal's birth step
+     * instead of its age, and a hawk's starvation step instead of its
+     * food level, so nothing has to be updated as an animal acts. Each
+     * animal is put on a timing wheel under the step at which it is
+     * next due to die, and the animals due at a step die at its start,
+     * before any animal acts. An animal that has eaten since it was
+     * scheduled is moved to its new step only when its old one comes
+     * round. Dying at the start of the step rather than on its own turn
+     * frees the animal's cell a little earlier, so the course of the
+     * simulation differs from the default, though it is statistically
+     * equivalent.
+     * @param scheduled Whether to schedule deaths on a timing wheel.
+     */
+    public void setScheduledDeaths(boolean scheduled)
+    {
+        if(scheduled && wheel == null) {
+            startWheel();
+        }
+        else if(!scheduled && wheel != null) {
+            stopWheel();
+        }
+    }
+
+    /**
+     * Convert the ages and food levels in the store into birth and
+     * starvation steps, and schedule every animal's death.
+     */
+    private void startWheel()
+    {
+        int horizon = 1;
+        for(int code = 1; code < speciesCodes; code++) {
+            horizon = Math.max(horizon, characteristics[code].getMaxAge() + 1);
+            if(behaviours[code] == SpeciesTable.PREDATOR) {
+                horizon = Math.max(horizon, characteristics[code].getFoodValue());
+            }
+        }
+        wheel = new DeathWheel(horizon);
+        for(int handle = 0; handle < animals.size(); handle++) {
+            animals.setAge(handle, step - animals.getAge(handle));
+            if(behaviours[animals.getSpecies(handle)] == SpeciesTable.PREDATOR) {
+                animals.setFoodLevel(handle, step + animals.getFoodLevel(handle));
+            }
+            else {
+                animals.setFoodLevel(handle, NEVER);
+            }
+            wheel.schedule(handle, Math.max(dueStep(handle), step + 1));
+        }
+    }
+
+    /**
+     * Convert the birth and starvation steps in the store back into
+     * ages and food levels, and drop the timing wheel.
+     */
+    private void stopWheel()
+    {
+        for(int handle = 0; handle < animals.size(); handle++) {
+            animals.setAge(handle, step - animals.getAge(handle));
+            if(behaviours[animals.getSpecies(handle)] == SpeciesTable.PREDATOR) {
+                animals.setFoodLevel(handle, animals.getFoodLevel(handle) - step);
+            }
+            else {
+                animals.setFoodLevel(handle, 0);
+            }
+        }
+        wheel = null;
+    }
+
+    /**
+     * Return the step at which an animal is due to die of old age or
+     * starvation, when deaths are scheduled.
+     * @param handle The handle of a living animal.
+     * @return The step at the start of which it dies.
+     */
+    private int dueStep(int handle)
+    {
+        int oldAge = animals.getAge(handle) + characteristics[animals.getSpecies(handle)].getMaxAge() + 1;
+        return Math.min(oldAge, animals.getFoodLevel(handle));
+    }
+
+    /**
+     * Let the animals due to die at this step die, and put those that
+     * have eaten since they were scheduled back on the wheel.
+     */
+    private void dieOnSchedule()
+    {
+        StepMetrics metrics = field.getMetrics();
+        long time = metrics.start();
+        int[] due = wheel.take(step);
+        int count = wheel.getTaken();
+        for(int i = 0; i < count; i++) {
+            int handle = due[i];
+            int species = animals.getSpecies(handle);
+            if(species == AnimalStore.DEAD) {
+                continue;
+            }
+            int dueStep = dueStep(handle);
+            if(dueStep > step) {
+                wheel.schedule(handle, dueStep);
+            }
+            else {
+                if(step - animals.getAge(handle) > characteristics[species].getMaxAge()) {
+                    serialWorker.events.oldAge(species);
+                }
+                else {
+                    serialWorker.events.starvation(species);
+                }
+                serialWorker.setDead(handle);
+            }
+        }
+        serialWorker.commitCounts();
+        metrics.lap(StepMetrics.AGING, time);
+    }
+
+    /**
+     * Set the seed from which the random streams of tiled steps are
+     * derived, one for each step and tile. It has no effect on steps
+     * in store order, which draw from the simulation's own generator,
+     * started from the seed given to the constructor (or the shared
+     * generator, for the constructors without one) and restored from
+     * checkpoints.
+     * @param seed The seed.
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Return the colour of a tile: tiles of the same colour never
+     * touch each other.
+     * @param tile The index of the tile.
+     * @return The colour, 0 to 3.
+     */
+    private int colourOf(int tile)
+    {
+        return (tile / tilesAcross % 2) * 2 + tile % tilesAcross % 2;
+    }
+
+    /**
+     * Reset the simulation to a starting position.
+     */
+    public void reset()
+    {
+        step = 0;
+        sorted = false;
+        animals.clear();
+        field.clear();
+        populate();
+        if(wheel != null) {
+            startWheel();
+        }
+
+        // Show the starting state in the view.
+        view.showStatus(step, field);
+    }
+
+    /**
+     * Take a checkpoint of the simulation, from which restore can
+     * carry on exactly as this simulation will. This only copies the
+     * animals into the checkpoint, which can then be written to a file
+     * on another thread.
+     * @return The checkpoint.
+     */
+    public Checkpoint checkpoint()
+    {
+        checkCheckpointable();
+        Checkpoint checkpoint = new Checkpoint(Checkpoint.PACKED, field, step,
+                                               rand.getState(), seed, parameters, animals.size());
+        boolean scheduled = wheel != null;
+        if(scheduled) {
+            // Checkpoints hold ages and food levels. The order in which
+            // scheduled animals die makes no difference, so the wheel
+            // can be built afresh.
+            stopWheel();
+        }
+        animals.writeTo(checkpoint.speciesColumn(), checkpoint.ageColumn(),
+                        checkpoint.foodLevelColumn(), checkpoint.cellColumn());
+        if(scheduled) {
+            startWheel();
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Return the simulation to the state of a checkpoint taken by a
+     * simulation of the same size.
+     * @param checkpoint The checkpoint.
+     */
+    public void restore(Checkpoint checkpoint)
+    {
+        checkCheckpointable();
+        sorted = false;
+        animals.clear();
+        field.clear();
+        int[] codes = checkpoint.prepare(Checkpoint.PACKED, field);
+        for(int code = 1; code < codes.length; code++) {
+            if(codes[code] != code) {
+                throw new IllegalArgumentException("The checkpoint's species codes do not match.");
+            }
+        }
+        int count = checkpoint.getAnimalCount();
+        animals.readFrom(count, checkpoint.speciesColumn(), checkpoint.ageColumn(),
+                         checkpoint.foodLevelColumn(), checkpoint.cellColumn());
+        for(int handle = 0; handle < count; handle++) {
+            field.placeHandle(animals.getSpecies(handle), handle, animals.getCell(handle));
+        }
+        step = checkpoint.getStep();
+        seed = checkpoint.getSeed();
+        parameters = checkpoint.getParameters();
+        SpeciesTable restored = SpeciesTable.of(parameters);
+        for(int row = 0; row < restored.size(); row++) {
+            characteristics[row + 1] = restored.getParameters(row);
+        }
+        table = restored;
+        rand.setSeed(checkpoint.getRandomState());
+        if(wheel != null) {
+            startWheel();
+        }
+
+        view.showStatus(step, field);
+    }
+
+    /**
+     * Determine whether the simulation should continue to run.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable()
+    {
+        StepMetrics metrics = field.getMetrics();
+        long time = metrics.start();
+        int nonZero = 0;
+        for(int species = 1; species < speciesCodes; species++) {
+            if(field.getPopulation(species) > 0) {
+                nonZero++;
+            }
+        }
+        metrics.lap(StepMetrics.CENSUS, time);
+        return nonZero > 1;
+    }
+
+    /**
+     * @param species A species code, such as HAWK.
+     * @return The number of living animals of that species.
+     */
+    public int getCount(int species)
+    {
+        return field.getPopulation(species);
+    }
+
+    /**
+     * @return A description of the current population of the field.
+     */
+    public String getPopulationDetails()
+    {
+        StringBuilder buffer = new StringBuilder();
+        for(int row = 0; row < table.size(); row++) {
+            if(row > 0) {
+                buffer.append(' ');
+            }
+            buffer.append(table.getName(row)).append(": ").append(field.getPopulation(row + 1));
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The field being simulated.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+
+    /**
+     * @return The configuration of this simulation, or null if it was
+     *         given a species table of its own.
+     */
+    public SimulationParameters getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * @return The species of this simulation; the species of row r
+     *         has species code r + 1.
+     */
+    public SpeciesTable getSpeciesTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return The view this simulation reports to.
+     */
+    public SimulatorView getView()
+    {
+        return view;
+    }
+
+    /**
+     * Randomly populate the field with the species of the table. Each
+     * row in turn has a chance of taking a cell not taken by an
+     * earlier row.
+     */
+    private void populate()
+    {
+        int cells = field.getCellCount();
+        for(int cell = 0; cell < cells; cell++) {
+            for(int row = 0; row < table.size(); row++) {
+                if(rand.nextDouble() <= table.getCreationProbability(row)) {
+                    int code = row + 1;
+                    int foodLevel = behaviours[code] == SpeciesTable.PREDATOR
+                                    ? characteristics[code].getFoodValue() : 0;
+                    addAnimal(code, 0, foodLevel, cell);
+                    break;
+                }
+            }
+            // else leave the location empty.
+        }
+    }
+
+    /**
+     * Check that the species are those of a SimulationParameters,
+     * which is all a checkpoint can describe.
+     * @throws IllegalStateException If the simulation was given a
+     *         species table of its own.
+     */
+    private void checkCheckpointable()
+    {
+        if(parameters == null) {
+            throw new IllegalStateException("Only simulations of hawks and squirrels can be checkpointed.");
+        }
+    }
+
+    /**
+     * Add an animal to the store and place it in the field.
+     * @return The handle of the new animal.
+     */
+    private int addAnimal(int species, int age, int foodLevel, int cell)
+    {
+        int handle = animals.add(species, age, foodLevel, cell);
+        field.placeHandle(species, handle, cell);
+        return handle;
+    }
+
+    /**
+     * Let all animals alive at the start of the step act, tile by
+     * tile. The tiles are coloured like a chessboard with four
+     * colours, so that two tiles of the same colour are always
+     * separated by a tile of another colour. An animal reads and
+     * writes only its own cell and the cells next to it, so the tiles
+     * of one colour can safely be processed at the same time. The four
+     * colours are processed one after another, and the births in each
+     * tile are added to the store, in tile order, after each colour.
+     */
+    private void actInTiles()
+    {
+        if(!sorted) {
+            sortByTile();
+        }
+        sorted = false;
+        for(int colour = 0; colour < 4; colour++) {
+            int[] phase = phaseTiles[colour];
+            inParallel(phase.length, 1, (from, to) -> {
+                for(int i = from; i < to; i++) {
+                    actInTile(phase[i]);
+                }
+            });
+            commitBirths(phase);
+        }
+        for(Worker worker : workers) {
+            worker.commitCounts();
+        }
+    }
+
+    /**
+     * Let the animals of a tile act, in store order, with the tile's
+     * own random stream for this step.
+     * @param tile The index of the tile.
+     */
+    private void actInTile(int tile)
+    {
+        Worker worker = workers[tile];
+        worker.rand.setSeed(Randomizer.deriveSeed(Randomizer.deriveSeed(seed, step), tile));
+        for(int handle = tileStart[tile]; handle < tileStart[tile + 1]; handle++) {
+            worker.act(handle);
+        }
+    }
+
+    /**
+     * Add the births of the tiles of a colour to the store, in tile
+     * order. Each tile is given its range of handles first, so that
+     * the tiles can add their births at the same time.
+     * @param phase The tiles of the colour.
+     */
+    private void commitBirths(int[] phase)
+    {
+        int first = animals.size();
+        int end = first;
+        for(int tile : phase) {
+            end = workers[tile].reserveHandles(end);
+        }
+        if(end == first) {
+            return;
+        }
+        animals.setSize(end);
+        inParallel(phase.length, 1, (from, to) -> {
+            for(int i = from; i < to; i++) {
+                workers[phase[i]].commitBirths();
+            }
+        });
+        if(wheel != null) {
+            for(int handle = first; handle < end; handle++) {
+                wheel.schedule(handle, dueStep(handle));
+            }
+        }
+    }
+
+    /**
+     * Sort the living animals by tile, keeping them in store order
+     * within each tile, and drop the dead ones. The store is split into
+     * blocks of handles: the animals of each block are counted by tile,
+     * the counts turned into where each block's animals go, and the
+     * animals copied into the other store, a block per thread, before
+     * the two stores swap places. The field's handles, and the wheel's,
+     * are brought up to date.
+     */
+    private void sortByTile()
+    {
+        int size = animals.size();
+        int blocks = Math.max(1, Math.min(parallelism * 4, size / SORT_BLOCK));
+        int blockSize = (size + blocks - 1) / blocks;
+        if(animalTiles == null || animalTiles.length < size) {
+            animalTiles = new int[Math.max(size, 1024) * 2];
+        }
+        if(blockCounts == null || blockCounts.length < blocks * tileCount) {
+            blockCounts = new int[blocks * tileCount];
+        }
+        if(wheel != null && (newHandles == null || newHandles.length < size)) {
+            newHandles = new int[Math.max(size, 1024) * 2];
+        }
+
+        // Count the living animals of each block in each tile.
+        inParallel(blocks, 1, (from, to) -> {
+            for(int block = from; block < to; block++) {
+                int counts = block * tileCount;
+                Arrays.fill(blockCounts, counts, counts + tileCount, 0);
+                int end = Math.min(size, (block + 1) * blockSize);
+                for(int handle = block * blockSize; handle < end; handle++) {
+                    if(animals.isAlive(handle)) {
+                        int tile = tileOf(animals.getCell(handle));
+                        animalTiles[handle] = tile;
+                        blockCounts[counts + tile]++;
+                    }
+                }
+            }
+        });
+        // Turn the counts into offsets within each tile, leaving the
+        // size of each tile in tileStart for now.
+        inParallel(tileCount, TILE_GRAIN, (from, to) -> {
+            for(int tile = from; tile < to; tile++) {
+                int offset = 0;
+                for(int block = 0; block < blocks; block++) {
+                    int count = blockCounts[block * tileCount + tile];
+                    blockCounts[block * tileCount + tile] = offset;
+                    offset += count;
+                }
+                tileStart[tile + 1] = offset;
+            }
+        });
+        tileStart[0] = 0;
+        for(int tile = 0; tile < tileCount; tile++) {
+            tileStart[tile + 1] += tileStart[tile];
+        }
+        // Copy the animals to their places in the other store.
+        sortedAnimals.setSize(tileStart[tileCount]);
+        inParallel(blocks, 1, (from, to) -> {
+            for(int block = from; block < to; block++) {
+                int counts = block * tileCount;
+                int end = Math.min(size, (block + 1) * blockSize);
+                for(int handle = block * blockSize; handle < end; handle++) {
+                    int newHandle = -1;
+                    if(animals.isAlive(handle)) {
+                        int tile = animalTiles[handle];
+                        newHandle = tileStart[tile] + blockCounts[counts + tile]++;
+                        animals.copyTo(handle, sortedAnimals, newHandle);
+                        field.setHandle(animals.getCell(handle), newHandle);
+                    }
+                    if(wheel != null) {
+                        newHandles[handle] = newHandle;
+                    }
+                }
+            }
+        });
+        AnimalStore unsorted = animals;
+        animals = sortedAnimals;
+        sortedAnimals = unsorted;
+        sortedAnimals.clear();
+        if(wheel != null) {
+            inParallel(wheel.getSlotCount(), 1, (from, to) -> wheel.remap(newHandles, from, to));
+        }
+        sorted = true;
+    }
+
+    /**
+     * Return the tile containing a cell.
+     * @param cell The index of the cell.
+     * @return The index of the tile.
+     */
+    private int tileOf(int cell)
+    {
+        int width = field.getWidth();
+        int row = cell / width;
+        int col = cell - row * width;
+        return (row >>> TILE_SHIFT) * tilesAcross + (col >>> TILE_SHIFT);
+    }
+
+    /**
+     * Carry out an action on the indices from 0 to count, split into
+     * ranges that are handled at the same time by the threads of the
+     * pool. Returns once every range has been handled.
+     * @param count The number of indices.
+     * @param grain The most indices in a range handled by one thread.
+     * @param action The action.
+     */
+    private void inParallel(int count, int grain, RangeAction action)
+    {
+        pool.invoke(new RangeTask(action, 0, count, grain));
+    }
+
+    /**
+     * An action on a range of indices, such as tiles or blocks of the
+     * store.
+     */
+    private interface RangeAction
+    {
+        /**
+         * @param from The first index.
+         * @param to One past the last index.
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Carries out an action on a range of indices, splitting the range
+     * between threads.
+     */
+    private static class RangeTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        // The action to carry out.
+        private final RangeAction action;
+        // The range of indices.
+        private final int from, to;
+        // The most indices handled without splitting the range.
+        private final int grain;
+
+        /**
+         * @param action The action to carry out.
+         * @param from The first index.
+         * @param to One past the last index.
+         * @param grain The most indices handled without splitting the range.
+         */
+        RangeTask(RangeAction action, int from, int to, int grain)
+        {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        /**
+         * Carry out the action on the range, or split it in two and
+         * carry it out on both halves.
+         */
+        protected void compute()
+        {
+            if(to - from <= grain) {
+                if(to > from) {
+                    action.run(from, to);
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(action, from, middle, grain),
+                          new RangeTask(action, middle, to, grain));
+            }
+        }
+    }
+
+    /**
+     * Carries out the behaviour of the species. Each worker
+     * has its own random number generator and neighbour cursor, so
+     * that several workers can run at once on different tiles.
+     *
+     * A worker that defers its births places each new born in the
+     * field straight away, so that nothing else can move into its
+     * cell, but under a temporary negative handle; the new born is
+     * only added to the store by commitBirths, under a handle from the
+     * range given by reserveHandles. Births are deferred whenever
+     * workers run at the same time, because the store cannot grow
+     * while it is being read.
+     *
+     * Workers write the field's cells with setOccupant, which leaves
+     * the field's population alone, and keep their own count of
+     * births and deaths; commitCounts adds it to the field's population.
+     */
+    private class Worker
+    {
+        // The random number generator used by this worker.
+        private final Random rand;
+        // A cursor over neighbouring cells.
+        private final NeighbourCursor adjacent;
+        // Whether new borns wait for commitBirths to join the store.
+        private final boolean deferBirths;
+        // The cell and species of each deferred birth. A birth whose
+        // new born was killed before being committed has species DEAD.
+        private int[] birthCells, birthSpecies;
+        // The number of deferred births, and of those still alive.
+        private int births, bornAlive;
+        // The handle of the first deferred birth still alive, once reserved.
+        private int firstHandle;
+        // Whether anything has been counted since the last commit.
+        private boolean counted;
+        // The change in the population of each species since the last commit.
+        private final int[] countChanges;
+        // The births, deaths and kills since the last commit.
+        private final StepEvents events;
+
+        /**
+         * Create a worker.
+         * @param rand The random number generator to use.
+         * @param deferBirths Whether to defer births until commitBirths.
+         */
+        Worker(Random rand, boolean deferBirths)
+        {
+            this.rand = rand;
+            this.deferBirths = deferBirths;
+            adjacent = new NeighbourCursor(field.getDepth(), field.getWidth(), rand);
+            birthCells = new int[64];
+            birthSpecies = new int[64];
+            countChanges = new int[speciesCodes];
+            events = new StepEvents(speciesCodes);
+        }
+
+        /**
+         * Let an animal act.
+         * @param handle The handle of the animal.
+         */
+        void act(int handle)
+        {
+            int species = animals.getSpecies(handle);
+            switch(behaviours[species]) {
+                case SpeciesTable.PREDATOR:
+                    predatorAct(handle, species);
+                    break;
+                case SpeciesTable.PREY:
+                    preyAct(handle, species);
+                    break;
+                default:
+                    // Dead, for instance eaten earlier in this step.
+                    break;
+            }
+        }
+
+        /**
+         * Reserve the handles of the deferred new borns still alive.
+         * @param first The first handle to reserve.
+         * @return One past the last handle reserved.
+         */
+        int reserveHandles(int first)
+        {
+            firstHandle = first;
+            return first + bornAlive;
+        }
+
+        /**
+         * Set the deferred new borns in the store under the reserved
+         * handles, in order of birth.
+         */
+        void commitBirths()
+        {
+            int handle = firstHandle;
+            for(int b = 0; b < births; b++) {
+                int species = birthSpecies[b];
+                if(species != AnimalStore.DEAD) {
+                    int cell = birthCells[b];
+                    animals.set(handle, species, newbornAge(), newbornFoodLevel(species), cell);
+                    field.setHandle(cell, handle);
+                    handle++;
+                }
+            }
+            births = 0;
+            bornAlive = 0;
+        }
+
+        /**
+         * Bring the field's population and events up to date.
+         */
+        void commitCounts()
+        {
+            if(!counted) {
+                return;
+            }
+            counted = false;
+            for(int species = 1; species < speciesCodes; species++) {
+                field.adjustPopulation(species, countChanges[species]);
+                countChanges[species] = 0;
+            }
+            field.getEvents().add(events);
+            events.reset();
+        }
+
+        /**
+         * The behaviour of predators, as in Hawk.act: age, get
+         * hungrier, breed, hunt for prey, and otherwise move to a free
+         * cell or die of overcrowding.
+         * @param predator The handle of the predator.
+         * @param species Its species code.
+         */
+        private void predatorAct(int predator, int species)
+        {
+            SpeciesParameters predators = characteristics[species];
+            int age;
+            if(wheel != null) {
+                // Old age and starvation are dealt with by the wheel.
+                age = step - animals.getAge(predator);
+            }
+            else {
+                age = animals.getAge(predator) + 1;
+                animals.setAge(predator, age);
+                if(age > predators.getMaxAge()) {
+                    events.oldAge(species);
+                    setDead(predator);
+                }
+                int foodLevel = animals.getFoodLevel(predator) - 1;
+                animals.setFoodLevel(predator, foodLevel);
+                if(foodLevel <= 0 && animals.isAlive(predator)) {
+                    events.starvation(species);
+                    setDead(predator);
+                }
+            }
+            if(animals.isAlive(predator)) {
+                int cell = animals.getCell(predator);
+                giveBirth(species, cell, age >= predators.getBreedingAge(), predators);
+                // Move towards a source of food if found.
+                int newCell = findFood(predator, species, cell);
+                if(newCell < 0) {
+                    // No food found - try to move to a free location.
+                    newCell = freeAdjacentCell(cell);
+                }
+                // See if it was possible to move.
+                if(newCell >= 0) {
+                    move(predator, newCell);
+                }
+                else {
+                    // Overcrowding.
+                    events.overcrowding(species);
+                    setDead(predator);
+                }
+            }
+        }
+
+        /**
+         * The behaviour of prey, as in Squirrel.act: age, breed, and
+         * move to a free cell or die of overcrowding.
+         * @param prey The handle of the animal.
+         * @param species Its species code.
+         */
+        private void preyAct(int prey, int species)
+        {
+            SpeciesParameters preys = characteristics[species];
+            int age;
+            if(wheel != null) {
+                // Old age is dealt with by the wheel.
+                age = step - animals.getAge(prey);
+            }
+            else {
+                age = animals.getAge(prey) + 1;
+                animals.setAge(prey, age);
+                if(age > preys.getMaxAge()) {
+                    events.oldAge(species);
+                    setDead(prey);
+                }
+            }
+            if(animals.isAlive(prey)) {
+                int cell = animals.getCell(prey);
+                giveBirth(species, cell, age >= preys.getBreedingAge(), preys);
+                // Try to move into a free location.
+                int newCell = freeAdjacentCell(cell);
+                if(newCell >= 0) {
+                    move(prey, newCell);
+                }
+                else {
+                    // Overcrowding.
+                    events.overcrowding(species);
+                    setDead(prey);
+                }
+            }
+        }
+
+        /**
+         * Look for prey adjacent to a predator. Only the first live
+         * prey, of any of the species it eats, is eaten.
+         * @param predator The handle of the hunting predator.
+         * @param species Its species code.
+         * @param cell The cell the predator occupies.
+         * @return The cell where food was found, or -1 if it wasn't.
+         */
+        private int findFood(int predator, int species, int cell)
+        {
+            int prey = 0;
+            for(int code : preyCodes[species]) {
+                prey |= field.neighbourMask(cell, code);
+            }
+            int where = adjacent.reset(cell).nextIn(prey);
+            if(where >= 0) {
+                events.kill(field.getSpeciesAt(where));
+                setDead(field.getHandleAt(where));
+                animals.setFoodLevel(predator, newbornFoodLevel(species));
+            }
+            return where;
+        }
+
+        /**
+         * Let an animal give birth into the free cells around it.
+         * @param species The species of the parent.
+         * @param cell The cell the parent occupies.
+         * @param canBreed Whether the parent has reached breeding age.
+         * @param characteristics The characteristics of the species.
+         */
+        private void giveBirth(int species, int cell, boolean canBreed,
+                               SpeciesParameters characteristics)
+        {
+            adjacent.reset(cell);
+            int litter = 0;
+            if(canBreed && rand.nextDouble() <= characteristics.getBreedingProbability()) {
+                litter = rand.nextInt(characteristics.getMaxLitterSize()) + 1;
+            }
+            int free = field.freeNeighbourMask(cell);
+            litter = Math.min(litter, Integer.bitCount(free));
+            for(int b = 0; b < litter; b++) {
+                bear(species, adjacent.nextIn(free));
+            }
+        }
+
+        /**
+         * Place a new born in a free cell.
+         * @param species The species of the new born.
+         * @param cell The cell the new born occupies.
+         */
+        private void bear(int species, int cell)
+        {
+            countChanges[species]++;
+            events.birth(species);
+            counted = true;
+            if(deferBirths) {
+                if(births == birthCells.length) {
+                    birthCells = Arrays.copyOf(birthCells, births * 2);
+                    birthSpecies = Arrays.copyOf(birthSpecies, births * 2);
+                }
+                birthCells[births] = cell;
+                birthSpecies[births] = species;
+                field.setOccupant(cell, species, -1 - births);
+                births++;
+                bornAlive++;
+            }
+            else {
+                int handle = animals.add(species, newbornAge(), newbornFoodLevel(species), cell);
+                field.setOccupant(cell, species, handle);
+                if(wheel != null) {
+                    wheel.schedule(handle, dueStep(handle));
+                }
+            }
+        }
+
+        /**
+         * Move an animal to another cell.
+         */
+        private void move(int handle, int newCell)
+        {
+            field.setOccupant(animals.getCell(handle), Field.EMPTY, 0);
+            field.setOccupant(newCell, animals.getSpecies(handle), handle);
+            animals.setCell(handle, newCell);
+        }
+
+        /**
+         * Mark an animal as dead and clear its cell. An animal that is
+         * already dead is left alone. A negative handle is a deferred
+         * birth of this worker, which is cancelled.
+         */
+        private void setDead(int handle)
+        {
+            counted = true;
+            if(handle < 0) {
+                int birth = -1 - handle;
+                bornAlive--;
+                countChanges[birthSpecies[birth]]--;
+                events.death(birthSpecies[birth]);
+                field.setOccupant(birthCells[birth], Field.EMPTY, 0);
+                birthSpecies[birth] = AnimalStore.DEAD;
+                return;
+            }
+            int species = animals.getSpecies(handle);
+            if(species != AnimalStore.DEAD) {
+                countChanges[species]--;
+                events.death(species);
+                field.setOccupant(animals.getCell(handle), Field.EMPTY, 0);
+                animals.setDead(handle);
+            }
+        }
+
+        /**
+         * Find the first free cell, in random order, adjacent to a cell.
+         * @return A free adjacent cell, or -1 if there is none.
+         */
+        private int freeAdjacentCell(int cell)
+        {
+            return adjacent.reset(cell).nextIn(field.freeNeighbourMask(cell));
+        }
+    }
+
+    /**
+     * @return The age of a new born, or its birth step if deaths are scheduled.
+     */
+    private int newbornAge()
+    {
+        return wheel != null ? step : 0;
+    }
+
+    /**
+     * Return the food level of a new born, which is also that of a
+     * predator that has just eaten.
+     * @param species A species code.
+     * @return The food level of a new born of that species, or its
+     *         starvation step if deaths are scheduled.
+     */
+    private int newbornFoodLevel(int species)
+    {
+        if(behaviours[species] != SpeciesTable.PREDATOR) {
+            return wheel != null ? NEVER : 0;
+        }
+        int foodValue = characteristics[species].getFoodValue();
+        return wheel != null ? step + foodValue : foodValue;
+    }
+
+    /**
+     * A timing wheel of the animals due to die of old age or
+     * starvation: a ring of slots, one per step, holding the handles
+     * of the animals due at that step. No animal is ever due further
+     * ahead than the number of slots, so each slot only ever holds one
+     * step's animals.
+     */
+    private static class DeathWheel
+    {
+        // The handles in each slot.
+        private int[][] slots;
+        // The number of handles in each slot.
+        private final int[] sizes;
+        // The number of handles returned by the last take.
+        private int taken;
+
+        /**
+         * Create an empty wheel.
+         * @param horizon The furthest ahead, in steps, that an animal
+         *                can be due.
+         */
+        DeathWheel(int horizon)
+        {
+            slots = new int[horizon + 1][];
+            sizes = new int[horizon + 1];
+            for(int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = new int[16];
+            }
+        }
+
+        /**
+         * Schedule an animal.
+         * @param handle The animal's handle.
+         * @param step The step at which it is due.
+         */
+        void schedule(int handle, int step)
+        {
+            int slot = step % slots.length;
+            if(sizes[slot] == slots[slot].length) {
+                slots[slot] = Arrays.copyOf(slots[slot], sizes[slot] * 2);
+            }
+            slots[slot][sizes[slot]++] = handle;
+        }
+
+        /**
+         * Empty the slot of a step. The handles stay valid until the
+         * slot comes round again, so animals can be rescheduled to
+         * other steps while they are read.
+         * @param step The step.
+         * @return The handles of the animals due at the step; there are
+         *         getTaken() of them.
+         */
+        int[] take(int step)
+        {
+            int slot = step % slots.length;
+            taken = sizes[slot];
+            sizes[slot] = 0;
+            return slots[slot];
+        }
+
+        /**
+         * @return The number of handles returned by the last take.
+         */
+        int getTaken()
+        {
+            return taken;
+        }
+
+        /**
+         * @return The number of slots.
+         */
+        int getSlotCount()
+        {
+            return slots.length;
+        }
+
+        /**
+         * Bring the handles up to date after the store was compacted,
+         * dropping animals that have died.
+         * @param newHandles The new handle of each old handle, or -1.
+         */
+        void remap(int[] newHandles)
+        {
+            remap(newHandles, 0, slots.length);
+        }
+
+        /**
+         * Bring the handles in a range of slots up to date after the
+         * store was compacted or sorted, dropping animals that have died.
+         * Ranges that do not overlap can be brought up to date at the
+         * same time.
+         * @param newHandles The new handle of each old handle, or -1.
+         * @param fromSlot The first slot.
+         * @param toSlot One past the last slot.
+         */
+        void remap(int[] newHandles, int fromSlot, int toSlot)
+        {
+            for(int slot = fromSlot; slot < toSlot; slot++) {
+                int[] handles = slots[slot];
+                int kept = 0;
+                for(int i = 0; i < sizes[slot]; i++) {
+                    int handle = newHandles[handles[i]];
+                    if(handle >= 0) {
+                        handles[kept++] = handle;
+                    }
+                }
+                sizes[slot] = kept;
+            }
+        }
+    }
+}
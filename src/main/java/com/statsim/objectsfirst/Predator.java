@@ -0,0 +1,230 @@
+package com.statsim.objectsfirst;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A simple model of a predator.
+ * Predators age, move, eat their prey, and die. Hawks and foxes
+ * behave alike and differ only in their characteristics, which are
+ * given as SpeciesParameters, and in the class of animal they eat,
+ * which is found around them by its species code.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public abstract class Predator extends Animal
+{
+    // The characteristics this predator shares with the others of its
+    // species in its simulation.
+    private final SpeciesParameters parameters;
+    // The class of animal this predator eats.
+    private final Class<?> preyClass;
+    // The predator's age.
+    private int age;
+    // The predator's food level, which is increased by eating.
+    private int foodLevel;
+
+    /**
+     * Create a predator. A predator can be created as a new born (age
+     * zero and not hungry) or with a random age and food level.
+     *
+     * @param randomAge If true, the predator will have random age and hunger level.
+     * @param field The field currently occupied.
+     * @param cell The index of the cell within the field.
+     * @param parameters The characteristics of the species in this simulation.
+     * @param preyClass The class of animal the predator eats.
+     */
+    protected Predator(boolean randomAge, Field field, int cell,
+                       SpeciesParameters parameters, Class<?> preyClass)
+    {
+        super(field, cell);
+        this.parameters = parameters;
+        this.preyClass = preyClass;
+        if(randomAge) {
+            age = field.getRandom().nextInt(parameters.getMaxAge());
+            foodLevel = field.getRandom().nextInt(parameters.getFoodValue());
+        }
+        else {
+            age = 0;
+            foodLevel = parameters.getFoodValue();
+        }
+    }
+
+    /**
+     * Create a predator of the given age and food level, as when a
+     * simulation is restored from a checkpoint.
+     * @param field The field currently occupied.
+     * @param cell The index of the cell within the field.
+     * @param age The predator's age.
+     * @param foodLevel The predator's food level.
+     * @param parameters The characteristics of the species in this simulation.
+     * @param preyClass The class of animal the predator eats.
+     */
+    protected Predator(Field field, int cell, int age, int foodLevel,
+                       SpeciesParameters parameters, Class<?> preyClass)
+    {
+        super(field, cell);
+        this.parameters = parameters;
+        this.preyClass = preyClass;
+        this.age = age;
+        this.foodLevel = foodLevel;
+    }
+
+    /**
+     * Create a new born of the same species.
+     * @param field The field the new born occupies.
+     * @param cell The index of its cell.
+     * @return The new born.
+     */
+    protected abstract Predator newborn(Field field, int cell);
+
+    /**
+     * @return The characteristics of the predator's species.
+     */
+    protected SpeciesParameters getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * @return The predator's age.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
+    /**
+     * @return The predator's food level.
+     */
+    int getFoodLevel()
+    {
+        return foodLevel;
+    }
+
+    /**
+     * This is what the predator does most of the time: it hunts for
+     * its prey. In the process, it might breed, die of hunger,
+     * or die of old age.
+     * @param newPredators A list to return newly born predators.
+     */
+    public void act(List<Animal> newPredators)
+    {
+        StepMetrics metrics = getMetrics();
+        long time = metrics.start();
+        incrementAge();
+        incrementHunger();
+        time = metrics.lap(StepMetrics.AGING, time);
+        if(isAlive()) {
+            giveBirth(newPredators);
+            time = metrics.lap(StepMetrics.BIRTHS, time);
+            // Move towards a source of food if found.
+            int newCell = findFood();
+            time = metrics.lap(StepMetrics.HUNTING, time);
+            if(newCell < 0) {
+                // No food found - try to move to a free location.
+                newCell = getField().freeAdjacentCell(getCell());
+            }
+            // See if it was possible to move.
+            if(newCell >= 0) {
+                setCell(newCell);
+            }
+            else {
+                // Overcrowding.
+                dieOfOvercrowding();
+            }
+            metrics.lap(StepMetrics.MOVEMENT, time);
+        }
+    }
+
+    /**
+     * Increase the age. This could result in the predator's death.
+     */
+    private void incrementAge()
+    {
+        age++;
+        if(age > parameters.getMaxAge()) {
+            dieOfOldAge();
+        }
+    }
+
+    /**
+     * Make this predator more hungry. This could result in its death.
+     */
+    private void incrementHunger()
+    {
+        foodLevel--;
+        if(foodLevel <= 0) {
+            dieOfStarvation();
+        }
+    }
+
+    /**
+     * Look for prey adjacent to the current location.
+     * Only the first live prey is eaten.
+     * @return The cell where food was found, or -1 if it wasn't.
+     */
+    private int findFood()
+    {
+        Field field = getField();
+        NeighbourCursor adjacent = field.adjacentCells(getCell());
+        int prey = field.neighbourMask(getCell(), field.getSpeciesCode(preyClass));
+        int where = adjacent.nextIn(prey);
+        while(where >= 0) {
+            Animal animal = (Animal) field.getObjectAt(where);
+            if(animal.isAlive()) {
+                field.getEvents().kill(field.getSpeciesAt(where));
+                animal.setDead();
+                foodLevel = parameters.getFoodValue();
+                return where;
+            }
+            where = adjacent.nextIn(prey);
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether or not this predator is to give birth at this step.
+     * New births will be made into free adjacent locations.
+     * @param newPredators A list to return newly born predators.
+     */
+    private void giveBirth(List<Animal> newPredators)
+    {
+        // New predators are born into adjacent locations.
+        // The adjacent locations are tried in random order.
+        Field field = getField();
+        NeighbourCursor adjacent = field.adjacentCells(getCell());
+        int free = field.freeNeighbourMask(getCell());
+        int births = Math.min(breed(), Integer.bitCount(free));
+        for(int b = 0; b < births; b++) {
+            int cell = adjacent.nextIn(free);
+            Predator young = newborn(field, cell);
+            newPredators.add(young);
+            field.getEvents().birth(field.getSpeciesAt(cell));
+        }
+    }
+
+    /**
+     * Generate a number representing the number of births,
+     * if it can breed.
+     * @return The number of births (may be zero).
+     */
+    private int breed()
+    {
+        int births = 0;
+        Random rand = getField().getRandom();
+        if(canBreed() && rand.nextDouble() <= parameters.getBreedingProbability()) {
+            births = rand.nextInt(parameters.getMaxLitterSize()) + 1;
+        }
+        return births;
+    }
+
+    /**
+     * A predator can breed if it has reached the breeding age.
+     */
+    private boolean canBreed()
+    {
+        return age >= parameters.getBreedingAge();
+    }
+}
@@ -1,11 +1,18 @@
 package com.statsim.objectsfirst;
 
-import java.util.Random;
-
 /**
  * Provide control over the randomization of the simulation. By using the shared, fixed-seed 
  * randomizer, repeated runs will perform exactly the same (which helps with testing). Set 
  * 'useShared' to false to get different random behaviour every time.
+ *
+ * The shared generator is not synchronized, and is meant for one thread only. Simulations
+ * that run at the same time on different threads must each have their own generator,
+ * from the constructors that take a seed.
+ *
+ * Besides the shared generator, the randomizer derives independent, reproducible streams
+ * from a seed: for instance one per run, and within a run one per step and tile. A stream
+ * depends only on its seed and keys, never on what other streams have drawn, so results do
+ * not depend on the order in which threads happen to run.
  * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
@@ -15,7 +22,7 @@ public class Randomizer
     // The default seed for control of randomization.
     private static final int SEED = 1111;
     // A shared Random object, if required.
-    private static final Random rand = new Random(SEED);
+    private static final SplitMixRandom rand = new SplitMixRandom(SEED);
     // Determine whether a shared random generator is to be provided.
     private static final boolean useShared = true;
 
@@ -27,16 +34,17 @@ public class Randomizer
     }
 
     /**
-     * Provide a random generator.
+     * Provide a random generator. The shared generator must only be
+     * used from one thread at a time.
      * @return A random object.
      */
-    public static Random getRandom()
+    public static SplitMixRandom getRandom()
     {
         if(useShared) {
             return rand;
         }
         else {
-            return new Random();
+            return new SplitMixRandom(System.nanoTime());
         }
     }
     
@@ -51,4 +59,61 @@ public class Randomizer
             rand.setSeed(SEED);
         }
     }
+
+    /**
+     * Return the current state of the shared generator, from which
+     * setState can later carry on exactly where it left off.
+     * @return The state of the shared generator.
+     */
+    public static long getState()
+    {
+        if(!useShared) {
+            throw new IllegalStateException("There is no shared generator.");
+        }
+        return rand.getState();
+    }
+
+    /**
+     * Put the shared generator back in a state returned by getState.
+     * @param state The state to return to.
+     */
+    public static void setState(long state)
+    {
+        if(!useShared) {
+            throw new IllegalStateException("There is no shared generator.");
+        }
+        rand.setSeed(state);
+    }
+
+    /**
+     * @return The seed the shared generator starts from.
+     */
+    public static long getSeed()
+    {
+        return SEED;
+    }
+
+    /**
+     * Provide a new, unshared generator for the stream with the given seed.
+     * @param seed The seed of the stream, for instance from deriveSeed.
+     * @return A generator for the stream.
+     */
+    public static SplitMixRandom getStream(long seed)
+    {
+        return new SplitMixRandom(seed);
+    }
+
+    /**
+     * Derive the seed of a sub-stream from the seed of its parent stream
+     * and a key, such as a run number, a step or a tile. Different keys
+     * give unrelated seeds, and the same seed and key always give the
+     * same one.
+     * @param seed The seed of the parent stream.
+     * @param key The key of the sub-stream.
+     * @return The seed of the sub-stream.
+     */
+    public static long deriveSeed(long seed, long key)
+    {
+        return SplitMixRandom.mix(seed + SplitMixRandom.mix(key + 0x632be59bd9b4e019L));
+    }
 }
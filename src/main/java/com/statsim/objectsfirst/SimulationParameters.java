@@ -0,0 +1,120 @@
+package com.statsim.objectsfirst;
+
+/**
+ * The configuration of one simulation: how densely the field is
+ * populated at the start, and the characteristics of hawks and
+ * squirrels. Each simulator holds its own, so simulations with
+ * different configurations can run side by side in one program.
+ *
+ * Instances are immutable; the with methods return a modified copy.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class SimulationParameters
+{
+    // The configuration used so far.
+    public static final SimulationParameters DEFAULT =
+        new SimulationParameters(0.02, 0.08, SpeciesParameters.HAWK, SpeciesParameters.SQUIRREL);
+
+    // The probability that a hawk will be created in any given grid position.
+    private final double hawkCreationProbability;
+    // The probability that a squirrel will be created in any given grid position.
+    private final double squirrelCreationProbability;
+    // The characteristics of hawks.
+    private final SpeciesParameters hawk;
+    // The characteristics of squirrels.
+    private final SpeciesParameters squirrel;
+
+    /**
+     * Create a configuration.
+     * @param hawkCreationProbability The probability that a hawk will be
+     *                                created in any given grid position.
+     * @param squirrelCreationProbability The probability that a squirrel will
+     *                                    be created in a position with no hawk.
+     * @param hawk The characteristics of hawks.
+     * @param squirrel The characteristics of squirrels.
+     */
+    public SimulationParameters(double hawkCreationProbability, double squirrelCreationProbability,
+                                SpeciesParameters hawk, SpeciesParameters squirrel)
+    {
+        this.hawkCreationProbability = hawkCreationProbability;
+        this.squirrelCreationProbability = squirrelCreationProbability;
+        this.hawk = hawk;
+        this.squirrel = squirrel;
+    }
+
+    /**
+     * @return The probability that a hawk will be created in any given grid position.
+     */
+    public double getHawkCreationProbability()
+    {
+        return hawkCreationProbability;
+    }
+
+    /**
+     * @return The probability that a squirrel will be created in a position with no hawk.
+     */
+    public double getSquirrelCreationProbability()
+    {
+        return squirrelCreationProbability;
+    }
+
+    /**
+     * @return The characteristics of hawks.
+     */
+    public SpeciesParameters getHawk()
+    {
+        return hawk;
+    }
+
+    /**
+     * @return The characteristics of squirrels.
+     */
+    public SpeciesParameters getSquirrel()
+    {
+        return squirrel;
+    }
+
+    /**
+     * @param hawkCreationProbability The new hawk creation probability.
+     * @param squirrelCreationProbability The new squirrel creation probability.
+     * @return A copy of this configuration with those creation probabilities.
+     */
+    public SimulationParameters withCreationProbabilities(double hawkCreationProbability,
+                                                          double squirrelCreationProbability)
+    {
+        return new SimulationParameters(hawkCreationProbability, squirrelCreationProbability,
+                                        hawk, squirrel);
+    }
+
+    /**
+     * @param hawk The new characteristics of hawks.
+     * @return A copy of this configuration with those characteristics.
+     */
+    public SimulationParameters withHawk(SpeciesParameters hawk)
+    {
+        return new SimulationParameters(hawkCreationProbability, squirrelCreationProbability,
+                                        hawk, squirrel);
+    }
+
+    /**
+     * @param squirrel The new characteristics of squirrels.
+     * @return A copy of this configuration with those characteristics.
+     */
+    public SimulationParameters withSquirrel(SpeciesParameters squirrel)
+    {
+        return new SimulationParameters(hawkCreationProbability, squirrelCreationProbability,
+                                        hawk, squirrel);
+    }
+
+    /**
+     * @return A description of the configuration.
+     */
+    public String toString()
+    {
+        return "hawkCreationProbability=" + hawkCreationProbability
+            + " squirrelCreationProbability=" + squirrelCreationProbability
+            + " hawk[" + hawk + "] squirrel[" + squirrel + "]";
+    }
+}
@@ -5,11 +5,12 @@ import com.opencsv.CSVWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Random;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.awt.Color;
+import java.awt.GraphicsEnvironment;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field
@@ -25,22 +26,25 @@ public class Simulator
     private static final int DEFAULT_WIDTH = 100;
     // The default depth of the grid.
     private static final int DEFAULT_DEPTH = 100;
-    // The probability that a hawk will be created in any given grid position.
-    private static final double HAWK_CREATION_PROBABILITY = 0.02;
-    // The probability that a squirrel will be created in any given grid position.
-    private static final double SQUIRREL_CREATION_PROBABILITY = 0.08;
 
     // List of animals in the field.
     private List<Animal> animals;
+    // The animals born during the current step.
+    private List<Animal> newAnimals;
     // The current state of the field.
     private Field field;
     // The current step of the simulation.
     private int step;
-    // A graphical view of the simulation.
+    // A view of the simulation, graphical or not.
     private SimulatorView view;
+    // The configuration of this simulation.
+    private SimulationParameters parameters;
+    // The random number generator of this simulation.
+    private SplitMixRandom rand;
     
     /**
-     * Construct a simulation field with default size.
+     * Construct a simulation field with default size, drawing from the
+     * shared generator of Randomizer, which is for one thread only.
      */
     public Simulator()
     {
@@ -49,11 +53,99 @@ public class Simulator
     
     /**
      * Create a simulation field with the given size.
+     * The field is shown in a window, unless there is no display
+     * available, in which case the simulation runs headless.
      * @param depth Depth of the field. Must be greater than zero.
      * @param width Width of the field. Must be greater than zero.
      */
     public Simulator(int depth, int width)
     {
+        this(depth, width, null);
+    }
+
+    /**
+     * Create a simulation field with the given size, reporting to
+     * the given view. The simulation draws from the shared generator
+     * of Randomizer, so it must not run at the same time as another
+     * simulation that does; give each its own seed instead.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to, or null for the default
+     *             view (a window if a display is available).
+     */
+    public Simulator(int depth, int width, SimulatorView view)
+    {
+        this(depth, width, view, SimulationParameters.DEFAULT, Randomizer.getRandom(), null);
+    }
+
+    /**
+     * Create a simulation field with the given size whose cells are
+     * kept in the given storage, reporting to the given view. The
+     * simulation draws from the shared generator of Randomizer, so it
+     * must not run at the same time as another simulation that does.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to, or null for the default view.
+     * @param cells Empty storage for depth * width cells, such as a
+     *              ChunkedCellStorage for a large, sparse field.
+     */
+    public Simulator(int depth, int width, SimulatorView view, CellStorage cells)
+    {
+        this(depth, width, view, SimulationParameters.DEFAULT, Randomizer.getRandom(), cells);
+    }
+
+    /**
+     * Create a simulation field with the given size and configuration,
+     * reporting to the given view. The simulation has its own random
+     * number generator, started from the given seed, so it runs
+     * independently of any other simulation in the program.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to, or null for the default view.
+     * @param parameters The configuration of the simulation.
+     * @param seed The seed of the simulation's random number generator.
+     */
+    public Simulator(int depth, int width, SimulatorView view,
+                     SimulationParameters parameters, long seed)
+    {
+        this(depth, width, view, parameters, new SplitMixRandom(seed), null);
+    }
+
+    /**
+     * Create a simulation field with the given size and configuration
+     * whose cells are kept in the given storage, reporting to the given
+     * view. The simulation has its own random number generator, started
+     * from the given seed.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to, or null for the default view.
+     * @param parameters The configuration of the simulation.
+     * @param seed The seed of the simulation's random number generator.
+     * @param cells Empty storage for depth * width cells.
+     */
+    public Simulator(int depth, int width, SimulatorView view,
+                     SimulationParameters parameters, long seed, CellStorage cells)
+    {
+        this(depth, width, view, parameters, new SplitMixRandom(seed), cells);
+    }
+
+    /**
+     * Create a simulation field with the given size and configuration,
+     * drawing from the given random number generator.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param view The view to report to, or null for the default view.
+     * @param parameters The configuration of the simulation.
+     * @param rand The random number generator of the simulation.
+     * @param cells Storage for the cells, or null for flat arrays.
+     */
+    private Simulator(int depth, int width, SimulatorView view,
+                      SimulationParameters parameters, SplitMixRandom rand, CellStorage cells)
+    {
+        if(cells != null && (width <= 0 || depth <= 0)) {
+            throw new IllegalArgumentException("The dimensions of a field with its own storage"
+                                               + " must be greater than zero.");
+        }
         if(width <= 0 || depth <= 0) {
             System.out.println("The dimensions must be greater than zero.");
             System.out.println("Using default values.");
@@ -61,17 +153,54 @@ public class Simulator
             width = DEFAULT_WIDTH;
         }
         
+        this.parameters = parameters;
+        this.rand = rand;
         animals = new ArrayList<>();
-        field = new Field(depth, width);
+        newAnimals = new ArrayList<>();
+        field = cells == null ? new Field(depth, width, rand) : new Field(depth, width, rand, cells);
 
         // Create a view of the state of each location in the field.
-        view = new SimulatorView(depth, width);
+        if(view == null) {
+            if(GraphicsEnvironment.isHeadless()) {
+                view = new HeadlessView();
+            }
+            else {
+                view = new GridView(depth, width);
+            }
+        }
+        this.view = view;
         view.setColor(Squirrel.class, Color.GREEN);
         view.setColor(Hawk.class, Color.RED);
         
         // Setup a valid starting point.
         reset();
     }
+
+    /**
+     * Create a simulation with the given size that does not
+     * display anything.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @return A simulator reporting to a headless view.
+     */
+    public static Simulator headless(int depth, int width)
+    {
+        return new Simulator(depth, width, new HeadlessView());
+    }
+
+    /**
+     * Create a simulation with the given size, configuration and seed
+     * that does not display anything.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param parameters The configuration of the simulation.
+     * @param seed The seed of the simulation's random number generator.
+     * @return A simulator reporting to a headless view.
+     */
+    public static Simulator headless(int depth, int width, SimulationParameters parameters, long seed)
+    {
+        return new Simulator(depth, width, new HeadlessView(), parameters, seed);
+    }
     
     /**
      * Run the simulation from its current state for a reasonably long period,
@@ -89,7 +218,7 @@ public class Simulator
      */
     public void simulate(int numSteps)
     {
-        for(int step = 1; step <= numSteps && view.isViable(field); step++) {
+        for(int step = 1; step <= numSteps && isViable(); step++) {
             simulateOneStep();
 //             delay(60);   // uncomment this to run more slowly
         }
@@ -103,22 +232,33 @@ public class Simulator
     public void simulateOneStep()
     {
         step++;
+        field.getEvents().reset();
+        StepMetrics metrics = field.getMetrics();
 
-        // Provide space for newborn animals.
-        List<Animal> newAnimals = new ArrayList<>();        
-        // Let all squirrels act.
-        for(Iterator<Animal> it = animals.iterator(); it.hasNext(); ) {
-            Animal animal = it.next();
-            animal.act(newAnimals);
-            if(! animal.isAlive()) {
-                it.remove();
+        // Let every animal alive at the start of the step act, in
+        // order. Animals eaten before their turn are skipped; the dead
+        // stay in the list until the end of the step.
+        newAnimals.clear();
+        int count = animals.size();
+        for(int i = 0; i < count; i++) {
+            Animal animal = animals.get(i);
+            if(animal.isAlive()) {
+                animal.act(newAnimals);
             }
         }
-               
-        // Add the newly born hawks and squirrels to the main lists.
+
+        // Add the newly born hawks and squirrels to the end of the
+        // list, then drop the dead in one pass, keeping the order of
+        // the living.
+        long time = metrics.start();
         animals.addAll(newAnimals);
+        time = metrics.lap(StepMetrics.BIRTHS, time);
+        animals.removeIf(animal -> !animal.isAlive());
+        time = metrics.lap(StepMetrics.REMOVAL, time);
 
         view.showStatus(step, field);
+        metrics.lap(StepMetrics.PAINTING, time);
+        metrics.endStep(field.getEvents(), field.getSpeciesCodes());
     }
         
     /**
@@ -134,27 +274,146 @@ public class Simulator
         view.showStatus(step, field);
     }
     
+    /**
+     * Take a checkpoint of the simulation, from which restore can
+     * carry on exactly as this simulation will. The animals, all
+     * alive between steps, are recorded in the order in which they act.
+     * @return The checkpoint.
+     */
+    public Checkpoint checkpoint()
+    {
+        Checkpoint checkpoint = new Checkpoint(Checkpoint.OBJECTS, field, step,
+                                               rand.getState(), 0, parameters, animals.size());
+        ByteBuffer species = checkpoint.speciesColumn();
+        IntBuffer ages = checkpoint.ageColumn();
+        IntBuffer foodLevels = checkpoint.foodLevelColumn();
+        IntBuffer cells = checkpoint.cellColumn();
+        for(Animal animal : animals) {
+            species.put((byte) field.getSpeciesAt(animal.getCell()));
+            cells.put(animal.getCell());
+            if(animal instanceof Hawk) {
+                Hawk hawk = (Hawk) animal;
+                ages.put(hawk.getAge());
+                foodLevels.put(hawk.getFoodLevel());
+            }
+            else if(animal instanceof Squirrel) {
+                ages.put(((Squirrel) animal).getAge());
+                foodLevels.put(0);
+            }
+            else {
+                throw new IllegalStateException("Cannot checkpoint " + animal.getClass().getName());
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Return the simulation to the state of a checkpoint taken by a
+     * simulation of the same size.
+     * @param checkpoint The checkpoint.
+     */
+    public void restore(Checkpoint checkpoint)
+    {
+        animals.clear();
+        field.clear();
+        int[] codes = checkpoint.prepare(Checkpoint.OBJECTS, field);
+        parameters = checkpoint.getParameters();
+        ByteBuffer species = checkpoint.speciesColumn();
+        IntBuffer ages = checkpoint.ageColumn();
+        IntBuffer foodLevels = checkpoint.foodLevelColumn();
+        IntBuffer cells = checkpoint.cellColumn();
+        for(int i = 0; i < checkpoint.getAnimalCount(); i++) {
+            int code = codes[species.get() & 0xff];
+            Class<?> animalClass = field.getSpeciesClass(code);
+            int age = ages.get();
+            int foodLevel = foodLevels.get();
+            int cell = cells.get();
+            if(animalClass == Hawk.class) {
+                animals.add(new Hawk(field, cell, age, foodLevel, parameters.getHawk()));
+            }
+            else if(animalClass == Squirrel.class) {
+                animals.add(new Squirrel(field, cell, age, parameters.getSquirrel()));
+            }
+            else {
+                throw new IllegalArgumentException("Cannot restore " + field.getSpeciesName(code));
+            }
+        }
+        step = checkpoint.getStep();
+        rand.setSeed(checkpoint.getRandomState());
+
+        view.showStatus(step, field);
+    }
+
+    /**
+     * Determine whether the simulation should continue to run.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable()
+    {
+        StepMetrics metrics = field.getMetrics();
+        long time = metrics.start();
+        boolean viable = view.isViable(field);
+        metrics.lap(StepMetrics.CENSUS, time);
+        return viable;
+    }
+
+    /**
+     * @return A description of the current population of the field.
+     */
+    public String getPopulationDetails()
+    {
+        return view.getPopulationDetails(field);
+    }
+
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * @return The field being simulated.
+     */
+    public Field getField()
+    {
+        return field;
+    }
+
+    /**
+     * @return The configuration of this simulation.
+     */
+    public SimulationParameters getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * @return The view this simulation reports to.
+     */
+    public SimulatorView getView()
+    {
+        return view;
+    }
+    
     /**
      * Randomly populate the field with hawk and squirrels.
      */
     private void populate()
     {
-        Random rand = Randomizer.getRandom();
         field.clear();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                if(rand.nextDouble() <= HAWK_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Hawk hawk = new Hawk(false, field, location);
-                    animals.add(hawk);
-                }
-                else if(rand.nextDouble() <= SQUIRREL_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Squirrel squirrel = new Squirrel(false, field, location);
-                    animals.add(squirrel);
-                }
-                // else leave the location empty.
+        int cells = field.getCellCount();
+        for(int cell = 0; cell < cells; cell++) {
+            if(rand.nextDouble() <= parameters.getHawkCreationProbability()) {
+                Hawk hawk = new Hawk(false, field, cell, parameters.getHawk());
+                animals.add(hawk);
+            }
+            else if(rand.nextDouble() <= parameters.getSquirrelCreationProbability()) {
+                Squirrel squirrel = new Squirrel(false, field, cell, parameters.getSquirrel());
+                animals.add(squirrel);
             }
+            // else leave the location empty.
         }
     }
     
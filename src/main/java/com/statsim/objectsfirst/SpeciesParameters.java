@@ -0,0 +1,156 @@
+package com.statsim.objectsfirst;
+
+/**
+ * The characteristics shared by all animals of one species in one
+ * simulation: when they can breed, how likely they are to, how many
+ * young they can have, how long they live, and how long the food they
+ * eat lasts them. Each simulation has its own, so that simulations with
+ * different characteristics can run side by side.
+ *
+ * Instances are immutable; the with methods return a modified copy.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class SpeciesParameters
+{
+    // The characteristics of hawks and squirrels used so far: hawks
+    // breed from 15 and live to 150, have up to 2 young with a
+    // probability of 0.08, and go 9 steps on one squirrel; squirrels
+    // breed from 1 and live to 40, and have up to 7 young with a
+    // probability of 0.12.
+    public static final SpeciesParameters HAWK =
+        new SpeciesParameters(15, 150, 0.08, 2, 9);
+    public static final SpeciesParameters SQUIRREL =
+        new SpeciesParameters(1, 40, 0.12, 7, 0);
+    // The characteristics of foxes, which are those of hawks.
+    public static final SpeciesParameters FOX = HAWK;
+
+    // The age at which an animal can start to breed.
+    private final int breedingAge;
+    // The age to which an animal can live.
+    private final int maxAge;
+    // The likelihood of an animal breeding.
+    private final double breedingProbability;
+    // The maximum number of births.
+    private final int maxLitterSize;
+    // The number of steps an animal can go on one meal of its prey.
+    private final int foodValue;
+
+    /**
+     * Create a set of characteristics.
+     * @param breedingAge The age at which an animal can start to breed.
+     * @param maxAge The age to which an animal can live.
+     * @param breedingProbability The likelihood of an animal breeding.
+     * @param maxLitterSize The maximum number of births. Must be at least one.
+     * @param foodValue The number of steps an animal can go on one meal
+     *                  of its prey; unused for animals that do not hunt.
+     */
+    public SpeciesParameters(int breedingAge, int maxAge, double breedingProbability,
+                             int maxLitterSize, int foodValue)
+    {
+        if(maxLitterSize < 1 || maxAge < 1) {
+            throw new IllegalArgumentException("The maximum age and litter size must be at least one.");
+        }
+        this.breedingAge = breedingAge;
+        this.maxAge = maxAge;
+        this.breedingProbability = breedingProbability;
+        this.maxLitterSize = maxLitterSize;
+        this.foodValue = foodValue;
+    }
+
+    /**
+     * @return The age at which an animal can start to breed.
+     */
+    public int getBreedingAge()
+    {
+        return breedingAge;
+    }
+
+    /**
+     * @return The age to which an animal can live.
+     */
+    public int getMaxAge()
+    {
+        return maxAge;
+    }
+
+    /**
+     * @return The likelihood of an animal breeding.
+     */
+    public double getBreedingProbability()
+    {
+        return breedingProbability;
+    }
+
+    /**
+     * @return The maximum number of births.
+     */
+    public int getMaxLitterSize()
+    {
+        return maxLitterSize;
+    }
+
+    /**
+     * @return The number of steps an animal can go on one meal of its prey.
+     */
+    public int getFoodValue()
+    {
+        return foodValue;
+    }
+
+    /**
+     * @param breedingAge The new breeding age.
+     * @return A copy of these characteristics with that breeding age.
+     */
+    public SpeciesParameters withBreedingAge(int breedingAge)
+    {
+        return new SpeciesParameters(breedingAge, maxAge, breedingProbability, maxLitterSize, foodValue);
+    }
+
+    /**
+     * @param maxAge The new maximum age.
+     * @return A copy of these characteristics with that maximum age.
+     */
+    public SpeciesParameters withMaxAge(int maxAge)
+    {
+        return new SpeciesParameters(breedingAge, maxAge, breedingProbability, maxLitterSize, foodValue);
+    }
+
+    /**
+     * @param breedingProbability The new breeding probability.
+     * @return A copy of these characteristics with that breeding probability.
+     */
+    public SpeciesParameters withBreedingProbability(double breedingProbability)
+    {
+        return new SpeciesParameters(breedingAge, maxAge, breedingProbability, maxLitterSize, foodValue);
+    }
+
+    /**
+     * @param maxLitterSize The new maximum litter size.
+     * @return A copy of these characteristics with that maximum litter size.
+     */
+    public SpeciesParameters withMaxLitterSize(int maxLitterSize)
+    {
+        return new SpeciesParameters(breedingAge, maxAge, breedingProbability, maxLitterSize, foodValue);
+    }
+
+    /**
+     * @param foodValue The new food value of a meal.
+     * @return A copy of these characteristics with that food value.
+     */
+    public SpeciesParameters withFoodValue(int foodValue)
+    {
+        return new SpeciesParameters(breedingAge, maxAge, breedingProbability, maxLitterSize, foodValue);
+    }
+
+    /**
+     * @return A description of the characteristics.
+     */
+    public String toString()
+    {
+        return "breedingAge=" + breedingAge + " maxAge=" + maxAge
+            + " breedingProbability=" + breedingProbability
+            + " maxLitterSize=" + maxLitterSize + " foodValue=" + foodValue;
+    }
+}
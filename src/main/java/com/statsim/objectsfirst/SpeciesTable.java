@@ -0,0 +1,296 @@
+package com.statsim.objectsfirst;
+
+import java.util.Arrays;
+
+/**
+ * The species of a simulation, described by data rather than by
+ * classes: one row per species, giving its name, how it behaves, its
+ * characteristics and how densely it populates the field at the
+ * start, and a matrix saying which species eat which.
+ *
+ * PackedSimulator runs any table: a new species, such as a variant of
+ * the hawk with other characteristics, is a new row rather than a new
+ * class. A row may name a class of animal, which is then how the
+ * species is known to views and checkpoints; a row without one is
+ * known by its name alone. Rows are numbered from 0, and the species
+ * of row r has species code r + 1 in the field.
+ *
+ * Instances are immutable; the with methods return a modified copy.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class SpeciesTable
+{
+    // The behaviour of a species that breeds and moves about.
+    public static final int PREY = 0;
+    // The behaviour of a species that also hunts, and starves if it
+    // finds nothing to eat.
+    public static final int PREDATOR = 1;
+    // The most species a table can hold, limited by the field.
+    private static final int MAX_ROWS = 254;
+
+    // The name of each species.
+    private final String[] names;
+    // The class of animal of each species, or null.
+    private final Class<?>[] animalClasses;
+    // The behaviour of each species, PREY or PREDATOR.
+    private final int[] behaviours;
+    // The characteristics of each species.
+    private final SpeciesParameters[] parameters;
+    // The probability that an animal of each species is created in a
+    // grid position not taken by an earlier row.
+    private final double[] creationProbabilities;
+    // Whether the species of each row eats the species of each column.
+    private final boolean[][] eats;
+
+    /**
+     * Create a table without any species.
+     */
+    public SpeciesTable()
+    {
+        this(new String[0], new Class<?>[0], new int[0], new SpeciesParameters[0],
+             new double[0], new boolean[0][0]);
+    }
+
+    /**
+     * Create a table from its columns, which it takes over.
+     */
+    private SpeciesTable(String[] names, Class<?>[] animalClasses, int[] behaviours,
+                         SpeciesParameters[] parameters, double[] creationProbabilities,
+                         boolean[][] eats)
+    {
+        this.names = names;
+        this.animalClasses = animalClasses;
+        this.behaviours = behaviours;
+        this.parameters = parameters;
+        this.creationProbabilities = creationProbabilities;
+        this.eats = eats;
+    }
+
+    /**
+     * Return the table of the hawks and squirrels of a configuration:
+     * hawks, in row 0, eat squirrels, in row 1.
+     * @param configuration The configuration.
+     * @return The table.
+     */
+    public static SpeciesTable of(SimulationParameters configuration)
+    {
+        return new SpeciesTable()
+            .withSpecies("Hawk", Hawk.class, PREDATOR, configuration.getHawk(),
+                         configuration.getHawkCreationProbability())
+            .withSpecies("Squirrel", Squirrel.class, PREY, configuration.getSquirrel(),
+                         configuration.getSquirrelCreationProbability())
+            .withPrey("Hawk", "Squirrel");
+    }
+
+    /**
+     * Add a species as a new row at the end of the table.
+     * @param name The name of the species. Must not be in the table yet.
+     * @param animalClass The class of animal the species is known by, or
+     *                    null to know it by its name.
+     * @param behaviour PREY or PREDATOR.
+     * @param characteristics The characteristics of the species.
+     * @param creationProbability The probability that an animal of the
+     *                            species is created in a grid position
+     *                            not taken by an earlier row.
+     * @return A copy of this table with the new row.
+     */
+    public SpeciesTable withSpecies(String name, Class<?> animalClass, int behaviour,
+                                    SpeciesParameters characteristics, double creationProbability)
+    {
+        if(indexOf(name) >= 0) {
+            throw new IllegalArgumentException("There is already a species called " + name + ".");
+        }
+        if(behaviour != PREY && behaviour != PREDATOR) {
+            throw new IllegalArgumentException("Unknown behaviour " + behaviour + ".");
+        }
+        if(names.length == MAX_ROWS) {
+            throw new IllegalStateException("Too many species in one table.");
+        }
+        int rows = names.length + 1;
+        String[] newNames = Arrays.copyOf(names, rows);
+        Class<?>[] newClasses = Arrays.copyOf(animalClasses, rows);
+        int[] newBehaviours = Arrays.copyOf(behaviours, rows);
+        SpeciesParameters[] newParameters = Arrays.copyOf(parameters, rows);
+        double[] newProbabilities = Arrays.copyOf(creationProbabilities, rows);
+        boolean[][] newEats = new boolean[rows][];
+        for(int row = 0; row < rows; row++) {
+            newEats[row] = row < eats.length ? Arrays.copyOf(eats[row], rows) : new boolean[rows];
+        }
+        newNames[rows - 1] = name;
+        newClasses[rows - 1] = animalClass;
+        newBehaviours[rows - 1] = behaviour;
+        newParameters[rows - 1] = characteristics;
+        newProbabilities[rows - 1] = creationProbability;
+        return new SpeciesTable(newNames, newClasses, newBehaviours, newParameters,
+                                newProbabilities, newEats);
+    }
+
+    /**
+     * Make one species the prey of another.
+     * @param predator The name of a species with PREDATOR behaviour.
+     * @param prey The name of the species it eats.
+     * @return A copy of this table in which the predator eats the prey.
+     */
+    public SpeciesTable withPrey(String predator, String prey)
+    {
+        int hunter = rowOf(predator);
+        int hunted = rowOf(prey);
+        if(behaviours[hunter] != PREDATOR) {
+            throw new IllegalArgumentException(predator + " does not hunt.");
+        }
+        boolean[][] newEats = new boolean[eats.length][];
+        for(int row = 0; row < eats.length; row++) {
+            newEats[row] = eats[row].clone();
+        }
+        newEats[hunter][hunted] = true;
+        return new SpeciesTable(names, animalClasses, behaviours, parameters,
+                                creationProbabilities, newEats);
+    }
+
+    /**
+     * @param name The name of a species.
+     * @param characteristics Its new characteristics.
+     * @return A copy of this table with those characteristics.
+     */
+    public SpeciesTable withParameters(String name, SpeciesParameters characteristics)
+    {
+        SpeciesParameters[] newParameters = parameters.clone();
+        newParameters[rowOf(name)] = characteristics;
+        return new SpeciesTable(names, animalClasses, behaviours, newParameters,
+                                creationProbabilities, eats);
+    }
+
+    /**
+     * @return The number of species in the table.
+     */
+    public int size()
+    {
+        return names.length;
+    }
+
+    /**
+     * Return the row of a species.
+     * @param name The name of the species.
+     * @return Its row, or -1 if it is not in the table.
+     */
+    public int indexOf(String name)
+    {
+        for(int row = 0; row < names.length; row++) {
+            if(names[row].equals(name)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param row A row of the table.
+     * @return The name of the species.
+     */
+    public String getName(int row)
+    {
+        return names[row];
+    }
+
+    /**
+     * @param row A row of the table.
+     * @return The class of animal the species is known by, or null.
+     */
+    public Class<?> getAnimalClass(int row)
+    {
+        return animalClasses[row];
+    }
+
+    /**
+     * @param row A row of the table.
+     * @return The behaviour of the species, PREY or PREDATOR.
+     */
+    public int getBehaviour(int row)
+    {
+        return behaviours[row];
+    }
+
+    /**
+     * @param row A row of the table.
+     * @return The characteristics of the species.
+     */
+    public SpeciesParameters getParameters(int row)
+    {
+        return parameters[row];
+    }
+
+    /**
+     * @param row A row of the table.
+     * @return The probability that an animal of the species is created
+     *         in a grid position not taken by an earlier row.
+     */
+    public double getCreationProbability(int row)
+    {
+        return creationProbabilities[row];
+    }
+
+    /**
+     * @param predator The row of a species.
+     * @param prey The row of another, or the same, species.
+     * @return Whether the first species eats the second.
+     */
+    public boolean eats(int predator, int prey)
+    {
+        return eats[predator][prey];
+    }
+
+    /**
+     * Return the rows of the species a species eats.
+     * @param predator The row of a species.
+     * @return The rows of its prey, in order; empty if it eats nothing.
+     */
+    public int[] getPrey(int predator)
+    {
+        int[] prey = new int[names.length];
+        int count = 0;
+        for(int row = 0; row < names.length; row++) {
+            if(eats[predator][row]) {
+                prey[count++] = row;
+            }
+        }
+        return Arrays.copyOf(prey, count);
+    }
+
+    /**
+     * @return A description of the table.
+     */
+    public String toString()
+    {
+        StringBuilder buffer = new StringBuilder();
+        for(int row = 0; row < names.length; row++) {
+            if(row > 0) {
+                buffer.append(' ');
+            }
+            buffer.append(names[row]).append('[')
+                  .append(behaviours[row] == PREDATOR ? "predator" : "prey")
+                  .append(" creationProbability=").append(creationProbabilities[row])
+                  .append(' ').append(parameters[row]);
+            for(int prey : getPrey(row)) {
+                buffer.append(" eats=").append(names[prey]);
+            }
+            buffer.append(']');
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Return the row of a species that must be in the table.
+     * @param name The name of the species.
+     * @return Its row.
+     */
+    private int rowOf(String name)
+    {
+        int row = indexOf(name);
+        if(row < 0) {
+            throw new IllegalArgumentException("There is no species called " + name + ".");
+        }
+        return row;
+    }
+}
@@ -0,0 +1,114 @@
+package com.statsim.objectsfirst;
+
+import java.util.Random;
+
+/**
+ * A fast random number generator based on SplitMix64. Its whole state
+ * is a single long, advanced by a fixed increment and scrambled on
+ * every call, so it needs no synchronization and no atomic updates:
+ * each thread should have its own.
+ *
+ * It extends Random so that it can be used wherever the simulation
+ * expects one. Generators for independent streams are made by
+ * seeding them with seeds from Randomizer.deriveSeed, or by split().
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class SplitMixRandom extends Random
+{
+    private static final long serialVersionUID = 1L;
+
+    // The increment added to the state on every call.
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    // The scale turning 53 random bits into a double in [0, 1).
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    // The state of the generator.
+    private long state;
+
+    /**
+     * Create a generator with the given seed.
+     * @param seed The seed.
+     */
+    public SplitMixRandom(long seed)
+    {
+        super(seed);
+        state = seed;
+    }
+
+    /**
+     * Restart the generator from the given seed.
+     * @param seed The seed.
+     */
+    public void setSeed(long seed)
+    {
+        state = seed;
+    }
+
+    /**
+     * @return The current state of the generator. A generator seeded
+     *         with this value continues exactly where this one is.
+     */
+    public long getState()
+    {
+        return state;
+    }
+
+    /**
+     * Create a new generator, independent of this one, seeded from
+     * this generator's next value.
+     * @return The new generator.
+     */
+    public SplitMixRandom split()
+    {
+        return new SplitMixRandom(mix(nextLong()));
+    }
+
+    /**
+     * @return The next 64 random bits.
+     */
+    public long nextLong()
+    {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    /**
+     * @return The next 32 random bits.
+     */
+    public int nextInt()
+    {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * @return A random double between 0 (inclusive) and 1 (exclusive).
+     */
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Supply random bits to the methods inherited from Random.
+     * @param bits The number of bits wanted, at most 32.
+     * @return An int whose low bits are random.
+     */
+    protected int next(int bits)
+    {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    /**
+     * Scramble 64 bits, so that nearby inputs give unrelated outputs.
+     * @param z The bits to scramble.
+     * @return The scrambled bits.
+     */
+    static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -10,20 +10,12 @@ import java.util.Random;
  */
 public class Squirrel extends Animal
 {
-    // Characteristics shared by all squirrels (class variables).
+    // Individual characteristics (instance fields); the defaults
+    // shared by all squirrels are SpeciesParameters.SQUIRREL.
 
-    // The age at which a squirrel can start to breed.
-    private static final int BREEDING_AGE = 1;
-    // The age to which a squirrel can live.
-    private static final int MAX_AGE = 40;
-    // The likelihood of a squirrel breeding.
-    private static final double BREEDING_PROBABILITY = 0.12;
-    // The maximum number of births.
-    private static final int MAX_LITTER_SIZE = 7;
-    // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
-    
-    // Individual characteristics (instance fields).
+    // The characteristics this squirrel shares with the other squirrels
+    // of its simulation.
+    private final SpeciesParameters parameters;
     
     // The squirrel's age.
     private int age;
@@ -38,13 +30,64 @@ public class Squirrel extends Animal
      */
     public Squirrel(boolean randomAge, Field field, Location location)
     {
-        super(field, location);
+        this(randomAge, field, field.indexOf(location));
+    }
+
+    /**
+     * Create a new squirrel. A squirrel may be created with age
+     * zero (a new born) or with a random age.
+     * 
+     * @param randomAge If true, the squirrel will have a random age.
+     * @param field The field currently occupied.
+     * @param cell The index of the cell within the field.
+     */
+    public Squirrel(boolean randomAge, Field field, int cell)
+    {
+        this(randomAge, field, cell, SpeciesParameters.SQUIRREL);
+    }
+
+    /**
+     * Create a new squirrel with the given characteristics. A squirrel
+     * may be created with age zero (a new born) or with a random age.
+     * 
+     * @param randomAge If true, the squirrel will have a random age.
+     * @param field The field currently occupied.
+     * @param cell The index of the cell within the field.
+     * @param parameters The characteristics of squirrels in this simulation.
+     */
+    public Squirrel(boolean randomAge, Field field, int cell, SpeciesParameters parameters)
+    {
+        super(field, cell);
+        this.parameters = parameters;
         age = 0;
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
+            age = field.getRandom().nextInt(parameters.getMaxAge());
         }
     }
     
+    /**
+     * Create a squirrel of the given age, as when a simulation is
+     * restored from a checkpoint.
+     * @param field The field currently occupied.
+     * @param cell The index of the cell within the field.
+     * @param age The squirrel's age.
+     * @param parameters The characteristics of squirrels in this simulation.
+     */
+    Squirrel(Field field, int cell, int age, SpeciesParameters parameters)
+    {
+        super(field, cell);
+        this.parameters = parameters;
+        this.age = age;
+    }
+
+    /**
+     * @return The squirrel's age.
+     */
+    int getAge()
+    {
+        return age;
+    }
+
     /**
      * This is what the squirrel does most of the time - it runs
      * around. Sometimes it will breed or die of old age.
@@ -52,18 +95,23 @@ public class Squirrel extends Animal
      */
     public void act(List<Animal> newSquirrel)
     {
+        StepMetrics metrics = getMetrics();
+        long time = metrics.start();
         incrementAge();
+        time = metrics.lap(StepMetrics.AGING, time);
         if(isAlive()) {
             giveBirth(newSquirrel);
+            time = metrics.lap(StepMetrics.BIRTHS, time);
             // Try to move into a free location.
-            Location newLocation = getField().freeAdjacentLocation(getLocation());
-            if(newLocation != null) {
-                setLocation(newLocation);
+            int newCell = getField().freeAdjacentCell(getCell());
+            if(newCell >= 0) {
+                setCell(newCell);
             }
             else {
                 // Overcrowding.
-                setDead();
+                dieOfOvercrowding();
             }
+            metrics.lap(StepMetrics.MOVEMENT, time);
         }
     }
 
@@ -74,8 +122,8 @@ public class Squirrel extends Animal
     private void incrementAge()
     {
         age++;
-        if(age > MAX_AGE) {
-            setDead();
+        if(age > parameters.getMaxAge()) {
+            dieOfOldAge();
         }
     }
     
@@ -87,14 +135,16 @@ public class Squirrel extends Animal
     private void giveBirth(List<Animal> newSquirrel)
     {
         // New squirrel are born into adjacent locations.
-        // Get a list of adjacent free locations.
+        // The adjacent locations are tried in random order.
         Field field = getField();
-        List<Location> free = field.getFreeAdjacentLocations(getLocation());
-        int births = breed();
-        for(int b = 0; b < births && free.size() > 0; b++) {
-            Location loc = free.remove(0);
-            Squirrel young = new Squirrel(false, field, loc);
+        NeighbourCursor adjacent = field.adjacentCells(getCell());
+        int free = field.freeNeighbourMask(getCell());
+        int births = Math.min(breed(), Integer.bitCount(free));
+        for(int b = 0; b < births; b++) {
+            int cell = adjacent.nextIn(free);
+            Squirrel young = new Squirrel(false, field, cell, parameters);
             newSquirrel.add(young);
+            field.getEvents().birth(field.getSpeciesAt(cell));
         }
     }
         
@@ -106,8 +156,9 @@ public class Squirrel extends Animal
     private int breed()
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        Random rand = getField().getRandom();
+        if(canBreed() && rand.nextDouble() <= parameters.getBreedingProbability()) {
+            births = rand.nextInt(parameters.getMaxLitterSize()) + 1;
         }
         return births;
     }
@@ -118,6 +169,6 @@ public class Squirrel extends Animal
      */
     private boolean canBreed()
     {
-        return age >= BREEDING_AGE;
+        return age >= parameters.getBreedingAge();
     }
 }
@@ -0,0 +1,191 @@
+package com.statsim.objectsfirst;
+
+import java.util.Arrays;
+
+/**
+ * A tally of what happened to each species during one step of a
+ * simulation: how many animals were born and how many died, and how
+ * many of those deaths were animals eaten by a predator, starved, died
+ * of old age or found no room to move. Species are identified by their
+ * species code in the field.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class StepEvents
+{
+    // The number of births of each species.
+    private final int[] births;
+    // The number of deaths of each species, from any cause.
+    private final int[] deaths;
+    // The number of animals of each species eaten.
+    private final int[] kills;
+    // The number of animals of each species that starved.
+    private final int[] starvations;
+    // The number of animals of each species that died of old age.
+    private final int[] oldAgeDeaths;
+    // The number of animals of each species that had nowhere to move.
+    private final int[] overcrowdingDeaths;
+
+    /**
+     * Create an empty tally.
+     * @param speciesCodes The number of species codes to make room for.
+     */
+    public StepEvents(int speciesCodes)
+    {
+        births = new int[speciesCodes];
+        deaths = new int[speciesCodes];
+        kills = new int[speciesCodes];
+        starvations = new int[speciesCodes];
+        oldAgeDeaths = new int[speciesCodes];
+        overcrowdingDeaths = new int[speciesCodes];
+    }
+
+    /**
+     * Record the birth of an animal.
+     * @param species The species code of the new born.
+     */
+    public void birth(int species)
+    {
+        births[species]++;
+    }
+
+    /**
+     * Record the death of an animal.
+     * @param species The species code of the animal that died.
+     */
+    public void death(int species)
+    {
+        deaths[species]++;
+    }
+
+    /**
+     * Record that an animal was eaten. Its death is recorded separately.
+     * @param species The species code of the animal eaten.
+     */
+    public void kill(int species)
+    {
+        kills[species]++;
+    }
+
+    /**
+     * Record that an animal starved. Its death is recorded separately.
+     * @param species The species code of the animal that starved.
+     */
+    public void starvation(int species)
+    {
+        starvations[species]++;
+    }
+
+    /**
+     * Record that an animal died of old age. Its death is recorded
+     * separately.
+     * @param species The species code of the animal that died.
+     */
+    public void oldAge(int species)
+    {
+        oldAgeDeaths[species]++;
+    }
+
+    /**
+     * Record that an animal died because it had nowhere to move. Its
+     * death is recorded separately.
+     * @param species The species code of the animal that died.
+     */
+    public void overcrowding(int species)
+    {
+        overcrowdingDeaths[species]++;
+    }
+
+    /**
+     * @param species A species code.
+     * @return The number of births of that species.
+     */
+    public int getBirths(int species)
+    {
+        return births[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The number of deaths of that species.
+     */
+    public int getDeaths(int species)
+    {
+        return deaths[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The number of animals of that species eaten.
+     */
+    public int getKills(int species)
+    {
+        return kills[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The number of animals of that species that starved.
+     */
+    public int getStarvations(int species)
+    {
+        return starvations[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The number of animals of that species that died of old age.
+     */
+    public int getOldAgeDeaths(int species)
+    {
+        return oldAgeDeaths[species];
+    }
+
+    /**
+     * @param species A species code.
+     * @return The number of animals of that species that had nowhere to move.
+     */
+    public int getOvercrowdingDeaths(int species)
+    {
+        return overcrowdingDeaths[species];
+    }
+
+    /**
+     * @return The number of species codes the tally has room for.
+     */
+    public int getSpeciesCodes()
+    {
+        return births.length;
+    }
+
+    /**
+     * Add another tally to this one.
+     * @param other The tally to add. It must not have room for more
+     *              species codes than this one.
+     */
+    public void add(StepEvents other)
+    {
+        for(int species = 0; species < other.births.length; species++) {
+            births[species] += other.births[species];
+            deaths[species] += other.deaths[species];
+            kills[species] += other.kills[species];
+            starvations[species] += other.starvations[species];
+            oldAgeDeaths[species] += other.oldAgeDeaths[species];
+            overcrowdingDeaths[species] += other.overcrowdingDeaths[species];
+        }
+    }
+
+    /**
+     * Set every count back to zero.
+     */
+    public void reset()
+    {
+        Arrays.fill(births, 0);
+        Arrays.fill(deaths, 0);
+        Arrays.fill(kills, 0);
+        Arrays.fill(starvations, 0);
+        Arrays.fill(oldAgeDeaths, 0);
+        Arrays.fill(overcrowdingDeaths, 0);
+    }
+}
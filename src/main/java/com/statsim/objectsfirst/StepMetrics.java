@@ -0,0 +1,237 @@
+package com.statsim.objectsfirst;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Where the time of each step goes, phase by phase, and running totals
+ * of births, kills and deaths by cause.
+ *
+ * The animals and the simulator time each phase with start and lap,
+ * adding to the time of the phase in the current step; at the end of
+ * the step the total of each phase goes into that phase's histogram,
+ * and the step's events are added to the totals.
+ *
+ * Metrics are only recorded when the program is started with
+ * -Dstatsim.metrics=true. ENABLED is a constant, so otherwise start and
+ * lap compile down to nothing and the timing costs no more than
+ * reading the field's metrics.
+ *
+ * The metrics can be published over JMX with register, and read from
+ * another thread while the simulation runs.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class StepMetrics implements StepMetricsMBean
+{
+    // Whether metrics are recorded.
+    public static final boolean ENABLED = Boolean.getBoolean("statsim.metrics");
+
+    // The phases of a step.
+    public static final int AGING = 0, HUNTING = 1, BIRTHS = 2, MOVEMENT = 3,
+                            REMOVAL = 4, CENSUS = 5, PAINTING = 6;
+    // The names of the phases, in order.
+    private static final String[] PHASES = {
+        "aging", "hunting", "births", "movement", "removal", "census", "painting"
+    };
+
+    // The time spent in each phase so far in the current step.
+    private final long[] stepNanos;
+    // The time spent in each phase per step.
+    private final LatencyHistogram[] histograms;
+    // The number of steps recorded.
+    private volatile long steps;
+    // The running totals of events, over all species.
+    private volatile long births, starvations, oldAgeDeaths, overcrowdingDeaths, kills;
+
+    /**
+     * Create empty metrics.
+     */
+    public StepMetrics()
+    {
+        stepNanos = new long[PHASES.length];
+        histograms = new LatencyHistogram[PHASES.length];
+        for(int phase = 0; phase < PHASES.length; phase++) {
+            histograms[phase] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Start timing a phase.
+     * @return The time now, to be passed to lap, or 0 if metrics are
+     *         not recorded.
+     */
+    public long start()
+    {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Add the time since start, or since the last lap, to a phase.
+     * @param phase The phase that has just ended.
+     * @param since The time the phase started.
+     * @return The time now, from which to time the next phase.
+     */
+    public long lap(int phase, long since)
+    {
+        if(!ENABLED) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        stepNanos[phase] += now - since;
+        return now;
+    }
+
+    /**
+     * Finish the current step: record the time spent in each phase,
+     * and add the step's events to the totals.
+     * @param events The events of the step.
+     * @param speciesCodes The number of species codes in use.
+     */
+    public void endStep(StepEvents events, int speciesCodes)
+    {
+        if(!ENABLED) {
+            return;
+        }
+        for(int phase = 0; phase < PHASES.length; phase++) {
+            histograms[phase].record(stepNanos[phase]);
+            stepNanos[phase] = 0;
+        }
+        long born = 0, starved = 0, old = 0, crowded = 0, eaten = 0;
+        for(int code = 1; code < speciesCodes; code++) {
+            born += events.getBirths(code);
+            starved += events.getStarvations(code);
+            old += events.getOldAgeDeaths(code);
+            crowded += events.getOvercrowdingDeaths(code);
+            eaten += events.getKills(code);
+        }
+        births += born;
+        starvations += starved;
+        oldAgeDeaths += old;
+        overcrowdingDeaths += crowded;
+        kills += eaten;
+        steps++;
+    }
+
+    /**
+     * Publish the metrics over JMX, under the name
+     * com.statsim:type=StepMetrics,name=the given name.
+     * @param name The name of the simulation the metrics belong to.
+     * @throws JMException If the metrics cannot be registered, for
+     *         instance because the name is taken.
+     */
+    public void register(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName("com.statsim:type=StepMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return ENABLED;
+    }
+
+    @Override
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    @Override
+    public long getBirths()
+    {
+        return births;
+    }
+
+    @Override
+    public long getStarvations()
+    {
+        return starvations;
+    }
+
+    @Override
+    public long getOldAgeDeaths()
+    {
+        return oldAgeDeaths;
+    }
+
+    @Override
+    public long getOvercrowdingDeaths()
+    {
+        return overcrowdingDeaths;
+    }
+
+    @Override
+    public long getKills()
+    {
+        return kills;
+    }
+
+    @Override
+    public String[] getPhases()
+    {
+        return PHASES.clone();
+    }
+
+    @Override
+    public double[] getMeanNanos()
+    {
+        double[] means = new double[PHASES.length];
+        for(int phase = 0; phase < PHASES.length; phase++) {
+            means[phase] = histograms[phase].getMean();
+        }
+        return means;
+    }
+
+    @Override
+    public long[] getMedianNanos()
+    {
+        return percentiles(50);
+    }
+
+    @Override
+    public long[] getP99Nanos()
+    {
+        return percentiles(99);
+    }
+
+    @Override
+    public long[] getMaxNanos()
+    {
+        long[] maxima = new long[PHASES.length];
+        for(int phase = 0; phase < PHASES.length; phase++) {
+            maxima[phase] = histograms[phase].getMax();
+        }
+        return maxima;
+    }
+
+    @Override
+    public void reset()
+    {
+        for(LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        steps = 0;
+        births = 0;
+        starvations = 0;
+        oldAgeDeaths = 0;
+        overcrowdingDeaths = 0;
+        kills = 0;
+    }
+
+    /**
+     * @param percentile A percentile, between 0 and 100.
+     * @return That percentile of the time spent in each phase per step.
+     */
+    private long[] percentiles(double percentile)
+    {
+        long[] values = new long[PHASES.length];
+        for(int phase = 0; phase < PHASES.length; phase++) {
+            values[phase] = histograms[phase].getPercentile(percentile);
+        }
+        return values;
+    }
+}
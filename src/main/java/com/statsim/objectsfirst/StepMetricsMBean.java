@@ -0,0 +1,77 @@
+package com.statsim.objectsfirst;
+
+/**
+ * The management interface of StepMetrics, as published over JMX.
+ * Phase statistics are arrays in the order of getPhases.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public interface StepMetricsMBean
+{
+    /**
+     * @return Whether metrics are being recorded at all.
+     */
+    boolean isEnabled();
+
+    /**
+     * @return The number of steps recorded.
+     */
+    long getSteps();
+
+    /**
+     * @return The number of animals born, over all species.
+     */
+    long getBirths();
+
+    /**
+     * @return The number of animals that starved.
+     */
+    long getStarvations();
+
+    /**
+     * @return The number of animals that died of old age.
+     */
+    long getOldAgeDeaths();
+
+    /**
+     * @return The number of animals that had nowhere to move.
+     */
+    long getOvercrowdingDeaths();
+
+    /**
+     * @return The number of animals eaten.
+     */
+    long getKills();
+
+    /**
+     * @return The names of the phases of a step.
+     */
+    String[] getPhases();
+
+    /**
+     * @return The mean time spent in each phase per step, in nanoseconds.
+     */
+    double[] getMeanNanos();
+
+    /**
+     * @return The median time spent in each phase per step, in nanoseconds.
+     */
+    long[] getMedianNanos();
+
+    /**
+     * @return The 99th percentile of the time spent in each phase per
+     *         step, in nanoseconds.
+     */
+    long[] getP99Nanos();
+
+    /**
+     * @return The longest time spent in each phase in one step, in nanoseconds.
+     */
+    long[] getMaxNanos();
+
+    /**
+     * Forget everything recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,287 @@
+package com.statsim.predatorprey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes rows to a CSV file from a background thread, so that logging
+ * does not make the caller wait on the file.
+ *
+ * Rows are handed to a bounded queue. The writer thread takes them off
+ * in batches, writes them through a buffered CsvLogger and flushes the
+ * file at a fixed interval, so rows reach the disk at most one interval
+ * after they were logged. When the queue is full, the overflow policy
+ * decides whether the caller waits for room or the row is dropped;
+ * both are counted, so backpressure can be seen and reported.
+ * Closing the logger writes every row already queued, then flushes and
+ * closes the file.
+ */
+public class AsyncCsvLogger implements Closeable {
+
+    /**
+     * What to do with a row logged while the queue is full
+     */
+    public enum OverflowPolicy {
+        /** Wait until the writer makes room for it */
+        BLOCK,
+        /** Drop it and count it as dropped */
+        DROP
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    // The most rows written between two looks at the queue
+    private static final int BATCH_SIZE = 1024;
+
+    // Queued after the last row to tell the writer to finish
+    private static final String[] END = new String[0];
+
+    private final CsvLogger csvLogger;
+
+    private final BlockingQueue<String[]> queue;
+
+    private final OverflowPolicy policy;
+
+    private final long flushIntervalNanos;
+
+    private final Thread writer;
+
+    private final AtomicLong loggedRows = new AtomicLong();
+
+    private final AtomicLong writtenRows = new AtomicLong();
+
+    private final AtomicLong droppedRows = new AtomicLong();
+
+    private final AtomicLong blockedRows = new AtomicLong();
+
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    private volatile boolean closed;
+
+    private volatile IOException failure;
+
+    /**
+     * Creates a logger with the default capacity and flush interval,
+     * that blocks the caller when the queue is full
+     *
+     * @param filePath file to create with path
+     * @param headers headers for file
+     */
+    public AsyncCsvLogger(String filePath, String[] headers) throws IOException {
+        this(filePath, headers, DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Creates a logger and starts its writer thread
+     *
+     * @param filePath file to create with path
+     * @param headers headers for file
+     * @param capacity the most rows waiting to be written
+     * @param flushIntervalMillis the longest time between two flushes of the file
+     * @param policy what to do with rows logged while the queue is full
+     */
+    public AsyncCsvLogger(String filePath, String[] headers, int capacity,
+                          long flushIntervalMillis, OverflowPolicy policy) throws IOException {
+        if (capacity <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Capacity and flush interval must be positive");
+        }
+        this.csvLogger = new CsvLogger(filePath, headers);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.writer = new Thread(this::writeRows, "csv-writer " + filePath);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a row to be written. Depending on the overflow policy, waits
+     * for room or drops the row if the queue is full. Rows may be logged
+     * from any thread, but not while the logger is being closed.
+     *
+     * @param data data to write
+     * @return false if the row was dropped
+     */
+    public boolean log(String[] data) {
+        if (closed) {
+            throw new IllegalStateException("Logger is closed");
+        }
+        loggedRows.incrementAndGet();
+        if (queue.offer(data)) {
+            return true;
+        }
+        if (policy == OverflowPolicy.DROP) {
+            droppedRows.incrementAndGet();
+            return false;
+        }
+        blockedRows.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            queue.put(data);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedRows.incrementAndGet();
+            return false;
+        } finally {
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the number of rows given to log
+     */
+    public long getLoggedRows() {
+        return loggedRows.get();
+    }
+
+    /**
+     * @return the number of rows written to the file so far
+     */
+    public long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    /**
+     * @return the number of rows dropped because the queue was full
+     */
+    public long getDroppedRows() {
+        return droppedRows.get();
+    }
+
+    /**
+     * @return the number of rows whose caller had to wait for room in the queue
+     */
+    public long getBlockedRows() {
+        return blockedRows.get();
+    }
+
+    /**
+     * @return the total time callers spent waiting for room in the queue, in nanoseconds
+     */
+    public long getBlockedNanos() {
+        return blockedNanos.get();
+    }
+
+    /**
+     * @return the number of rows waiting to be written
+     */
+    public int getQueuedRows() {
+        return queue.size();
+    }
+
+    /**
+     * Writes every row already logged, then flushes and closes the file.
+     * Waits for the writer thread to finish.
+     *
+     * @throws IOException if writing to the file failed at any point
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            while (writer.isAlive()) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * The writer thread: takes rows off the queue in batches and writes
+     * them, flushing at the flush interval, until the end of the rows
+     */
+    private void writeRows() {
+        List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+        long nextFlush = System.nanoTime() + flushIntervalNanos;
+        boolean finished = false;
+        try {
+            while (!finished) {
+                String[] first = queue.poll(Math.max(0, nextFlush - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                }
+                for (String[] row : batch) {
+                    if (row == END) {
+                        finished = true;
+                        break;
+                    }
+                    write(row);
+                }
+                batch.clear();
+                if (finished || System.nanoTime() - nextFlush >= 0) {
+                    flush();
+                    nextFlush = System.nanoTime() + flushIntervalNanos;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Nothing interrupts the writer but the end of the program; close what was written.
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                csvLogger.close();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Writes one row, unless writing has already failed
+     */
+    private void write(String[] row) {
+        if (failure == null) {
+            csvLogger.log(row);
+            writtenRows.incrementAndGet();
+        }
+    }
+
+    /**
+     * Flushes the rows written so far to the file
+     */
+    private void flush() {
+        if (failure == null) {
+            try {
+                csvLogger.flush();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records the first failure to write, to be reported by close
+     */
+    private void fail(IOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+}
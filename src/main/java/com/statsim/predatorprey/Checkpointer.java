@@ -0,0 +1,96 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.Checkpoint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Saves checkpoints to a file on a background thread, so that the
+ * simulation only waits for the state to be copied, not written.
+ *
+ * Each checkpoint is written to a temporary file that then replaces
+ * the checkpoint file, so the file always holds a complete checkpoint
+ * even if the program dies while writing the next one. Only one
+ * checkpoint is written at a time; saving another waits for the
+ * previous one to be done.
+ */
+public class Checkpointer implements Closeable {
+
+    private final Path path;
+
+    private final Path partPath;
+
+    private final ExecutorService executor;
+
+    private Future<?> pending;
+
+    /**
+     * @param filePath file to keep the latest checkpoint in
+     */
+    public Checkpointer(String filePath) {
+        this.path = Paths.get(filePath);
+        this.partPath = Paths.get(filePath + ".part");
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts writing a checkpoint, once the previous one is written
+     *
+     * @param checkpoint checkpoint to write
+     * @throws IOException if writing the previous checkpoint failed
+     */
+    public void save(Checkpoint checkpoint) throws IOException {
+        awaitPending();
+        pending = executor.submit(() -> {
+            checkpoint.write(partPath.toString());
+            Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return null;
+        });
+    }
+
+    /**
+     * Waits for the last checkpoint to be written
+     *
+     * @throws IOException if writing it failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitPending();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void awaitPending() throws IOException {
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing a checkpoint", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Writing a checkpoint failed", e.getCause());
+        } finally {
+            pending = null;
+        }
+    }
+}
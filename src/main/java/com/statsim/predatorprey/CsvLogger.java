@@ -2,13 +2,20 @@ package com.statsim.predatorprey;
 
 import com.opencsv.CSVWriter;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
+/**
+ * Writes rows to a CSV file, on the calling thread. Rows are buffered
+ * and reach the file when the buffer fills, on flush and on close.
+ * See AsyncCsvLogger for logging that never waits on the file.
+ */
 public class CsvLogger {
 
-    private FileWriter outputFile;
+    private Writer outputFile;
 
     private CSVWriter csvWriter;
 
@@ -32,7 +39,7 @@ public class CsvLogger {
      * @param filePath file to create with path
      */
     private void createFile(String filePath) throws IOException {
-        this.outputFile = new FileWriter(new File(filePath));
+        this.outputFile = new BufferedWriter(new FileWriter(new File(filePath)));
     }
 
     /**
@@ -40,7 +47,7 @@ public class CsvLogger {
      *
      * @param file file to write CSV data on
      */
-    private void createCsvWriter(FileWriter file) {
+    private void createCsvWriter(Writer file) {
         this.csvWriter = new CSVWriter(this.outputFile);
     }
 
@@ -52,6 +59,13 @@ public class CsvLogger {
         this.csvWriter.writeNext(data);
     }
 
+    /**
+     * Writes the buffered rows to the file
+     */
+    public void flush() throws IOException {
+        this.csvWriter.flush();
+    }
+
     public void close() throws IOException {
         this.csvWriter.close();
     }
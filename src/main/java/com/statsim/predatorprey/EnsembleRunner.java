@@ -0,0 +1,107 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.FieldStats;
+import com.statsim.objectsfirst.SimulationParameters;
+import com.statsim.objectsfirst.Simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many replicates of one configuration as independent headless
+ * simulations, spread over a pool of threads, and folds the population
+ * of every step of every replicate into ensemble statistics without
+ * keeping the trajectories.
+ *
+ * Each thread takes replicates one at a time and gathers them into its
+ * own statistics, which are merged once all the replicates are done.
+ * Every replicate runs for the full number of steps, even after a
+ * species has died out, so that later steps average over all replicates
+ * rather than only those that survived.
+ */
+public class EnsembleRunner {
+
+    private final int depth;
+
+    private final int width;
+
+    private final int steps;
+
+    private final int threads;
+
+    /**
+     * @param depth depth of the field of every replicate
+     * @param width width of the field of every replicate
+     * @param steps steps in each replicate
+     * @param threads number of replicates to carry out at once
+     */
+    public EnsembleRunner(int depth, int width, int steps, int threads) {
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        this.threads = threads;
+    }
+
+    /**
+     * Runs one replicate of a configuration per seed
+     *
+     * @param parameters configuration to run
+     * @param seeds seed of each replicate
+     * @param species species to gather statistics for
+     * @return statistics of the ensemble, with species named by their simple class names
+     */
+    public EnsembleStatistics run(SimulationParameters parameters, long[] seeds, Class<?>... species)
+            throws InterruptedException {
+        String[] names = new String[species.length];
+        for (int i = 0; i < species.length; i++) {
+            names[i] = species[i].getSimpleName();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            AtomicInteger next = new AtomicInteger();
+            List<Future<EnsembleStatistics>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    EnsembleStatistics statistics = new EnsembleStatistics(steps, names);
+                    int replicate;
+                    while ((replicate = next.getAndIncrement()) < seeds.length) {
+                        replicate(parameters, seeds[replicate], species, statistics);
+                    }
+                    return statistics;
+                }));
+            }
+            EnsembleStatistics ensemble = new EnsembleStatistics(steps, names);
+            for (Future<EnsembleStatistics> worker : workers) {
+                ensemble.merge(worker.get());
+            }
+            return ensemble;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A replicate failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Carries out one replicate, adding its population at every step to the statistics
+     */
+    private void replicate(SimulationParameters parameters, long seed, Class<?>[] species,
+                           EnsembleStatistics statistics) {
+        Simulator simulator = Simulator.headless(depth, width, parameters, seed);
+        FieldStats stats = new FieldStats();
+        for (int step = 0; ; step++) {
+            for (int s = 0; s < species.length; s++) {
+                statistics.add(step, s, stats.getCount(simulator.getField(), species[s]));
+            }
+            if (step == steps) {
+                return;
+            }
+            simulator.simulateOneStep();
+        }
+    }
+}
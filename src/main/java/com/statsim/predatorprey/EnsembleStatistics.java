@@ -0,0 +1,184 @@
+package com.statsim.predatorprey;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Per-step statistics of the population of each species over an
+ * ensemble of replicate runs, gathered as the runs go along.
+ *
+ * Each replicate's count at each step is folded into running moments
+ * and a quantile sketch for that step and species, and counted towards
+ * the extinction probability if it is zero, after which it is no longer
+ * needed. Memory therefore depends on the number of steps and species,
+ * not on the number of replicates. Statistics gathered separately, for
+ * instance by different threads, can be merged.
+ */
+public class EnsembleStatistics {
+
+    /**
+     * Quantiles written to CSV for each species: the median and a 90% band
+     */
+    public static final double[] QUANTILES = {0.05, 0.5, 0.95};
+
+    private final String[] names;
+
+    private final int steps;
+
+    // Indexed by step * species count + species
+    private final RunningMoments[] moments;
+
+    private final QuantileSketch[] sketches;
+
+    private final long[] extinct;
+
+    /**
+     * @param steps last step to gather statistics for; step 0 is the starting population
+     * @param names names of the species, in the order their counts are added
+     */
+    public EnsembleStatistics(int steps, String... names) {
+        this.names = names.clone();
+        this.steps = steps;
+        int size = (steps + 1) * names.length;
+        moments = new RunningMoments[size];
+        sketches = new QuantileSketch[size];
+        extinct = new long[size];
+        for (int i = 0; i < size; i++) {
+            moments[i] = new RunningMoments();
+            sketches[i] = new QuantileSketch();
+        }
+    }
+
+    /**
+     * Adds the count of one species at one step of a replicate
+     *
+     * @param step step of the replicate
+     * @param species index of the species among the names
+     * @param count number of animals of that species at that step
+     */
+    public void add(int step, int species, int count) {
+        int i = index(step, species);
+        moments[i].add(count);
+        sketches[i].add(count);
+        if (count == 0) {
+            extinct[i]++;
+        }
+    }
+
+    /**
+     * Adds the replicates of other statistics to these ones
+     *
+     * @param other statistics over the same steps and species
+     */
+    public void merge(EnsembleStatistics other) {
+        if (other.steps != steps || other.names.length != names.length) {
+            throw new IllegalArgumentException("Statistics over different steps or species");
+        }
+        for (int i = 0; i < moments.length; i++) {
+            moments[i].merge(other.moments[i]);
+            sketches[i].merge(other.sketches[i]);
+            extinct[i] += other.extinct[i];
+        }
+    }
+
+    /**
+     * @return last step statistics are gathered for
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return names of the species
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * @return number of replicates whose first step has been added
+     */
+    public long getReplicates() {
+        return names.length == 0 ? 0 : moments[0].getCount();
+    }
+
+    /**
+     * @return mean count of a species at a step over the replicates
+     */
+    public double getMean(int step, int species) {
+        return moments[index(step, species)].getMean();
+    }
+
+    /**
+     * @return sample variance of the count of a species at a step over the replicates
+     */
+    public double getVariance(int step, int species) {
+        return moments[index(step, species)].getVariance();
+    }
+
+    /**
+     * @param quantile quantile to return, between 0 and 1
+     * @return approximate quantile of the count of a species at a step over the replicates
+     */
+    public double getQuantile(int step, int species, double quantile) {
+        return sketches[index(step, species)].getQuantile(quantile);
+    }
+
+    /**
+     * @return fraction of the replicates in which a species has died out by a step
+     */
+    public double getExtinctionProbability(int step, int species) {
+        int i = index(step, species);
+        long count = moments[i].getCount();
+        return count == 0 ? 0 : (double) extinct[i] / count;
+    }
+
+    /**
+     * Writes the statistics to a CSV file, one row per step
+     *
+     * @param csvPath file to write to
+     */
+    public void writeCsv(String csvPath) throws IOException {
+        String[] header = new String[1 + names.length * (3 + QUANTILES.length)];
+        int column = 0;
+        header[column++] = "step";
+        for (String name : names) {
+            header[column++] = name + " mean";
+            header[column++] = name + " sd";
+            for (double quantile : QUANTILES) {
+                header[column++] = name + " p" + Math.round(quantile * 100);
+            }
+            header[column++] = name + " extinction";
+        }
+        CsvLogger csv = new CsvLogger(csvPath, header);
+        try {
+            for (int step = 0; step <= steps; step++) {
+                String[] row = new String[header.length];
+                column = 0;
+                row[column++] = Integer.toString(step);
+                for (int species = 0; species < names.length; species++) {
+                    row[column++] = format(getMean(step, species));
+                    row[column++] = format(Math.sqrt(getVariance(step, species)));
+                    for (double quantile : QUANTILES) {
+                        row[column++] = format(getQuantile(step, species, quantile));
+                    }
+                    row[column++] = format(getExtinctionProbability(step, species));
+                }
+                csv.log(row);
+            }
+        } finally {
+            csv.close();
+        }
+    }
+
+    private int index(int step, int species) {
+        if (step < 0 || step > steps || species < 0 || species >= names.length) {
+            throw new IndexOutOfBoundsException("Step " + step + ", species " + species);
+        }
+        return step * names.length + species;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
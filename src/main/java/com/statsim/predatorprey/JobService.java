@@ -0,0 +1,549 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.FieldStats;
+import com.statsim.objectsfirst.Hawk;
+import com.statsim.objectsfirst.SimulationParameters;
+import com.statsim.objectsfirst.Simulator;
+import com.statsim.objectsfirst.Squirrel;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-lived local service that runs headless simulations on request,
+ * so that scripts pay for JVM startup and JIT warm-up once rather than
+ * once per run. It listens over HTTP on the loopback interface only.
+ *
+ * <pre>
+ *   POST   /jobs        submit a run; the body or query string holds
+ *                       form fields: depth, width, steps, seed, every,
+ *                       hawkCreationProbability, squirrelCreationProbability,
+ *                       hawkBreedingProbability, squirrelBreedingProbability.
+ *                       Answers 202 with the job's id, 400 for a bad
+ *                       field, or 503 if the queue is full
+ *   GET    /jobs        list the jobs and their states
+ *   GET    /jobs/ID     stream the job's results as CSV, one row every
+ *                       "every" steps, as they are produced, ending with
+ *                       a "# state" line once the job is over; 503 if
+ *                       too many clients are streaming already
+ *   DELETE /jobs/ID     cancel the job, queued or running
+ * </pre>
+ *
+ * Runs are carried out on a fixed number of threads, with a bounded
+ * queue of runs waiting for one, and requests are handled on a fixed
+ * number of threads too, with connections beyond a bounded queue closed
+ * straight away. Results are kept in memory until the job is evicted:
+ * only the most recent finished jobs are kept. So that the memory they
+ * take is bounded, a job is refused unless its field has at most
+ * MAX_CELLS cells, it runs at most MAX_STEPS steps, and it produces at
+ * most MAX_ROWS rows.
+ */
+public class JobService implements Closeable {
+
+    public static final String[] HEADER = {"step", "hawks", "squirrels"};
+
+    private static final int RETAINED_JOBS = 256;
+
+    private static final int DEFAULT_SIZE = 100;
+
+    private static final int DEFAULT_STEPS = 500;
+
+    public static final int MAX_CELLS = 4_000_000;
+
+    public static final int MAX_STEPS = 1_000_000;
+
+    public static final int MAX_ROWS = 10_000;
+
+    private static final int HANDLER_THREADS = 8;
+
+    private static final int QUEUED_REQUESTS = 64;
+
+    // Streams leave some handler threads free for the other requests
+    private static final int MAX_STREAMS = HANDLER_THREADS - 2;
+
+    private final HttpServer server;
+
+    private final ThreadPoolExecutor runners;
+
+    private final ExecutorService handlers;
+
+    private final Semaphore streams = new Semaphore(MAX_STREAMS);
+
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * Starts the service
+     *
+     * @param port port to listen on, on the loopback interface; 0 for any free port
+     * @param threads number of runs to carry out at once
+     * @param queueCapacity number of runs that can wait for a thread
+     */
+    public JobService(int port, int threads, int queueCapacity) throws IOException {
+        runners = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreads("job-runner"));
+        handlers = new ThreadPoolExecutor(HANDLER_THREADS, HANDLER_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUED_REQUESTS), daemonThreads("job-http"));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/jobs", this::handle);
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    /**
+     * @return the port the service listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops listening and cancels every job
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        for (Job job : jobs.values()) {
+            cancel(job);
+        }
+        runners.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/jobs") || path.equals("/jobs/")) {
+                if (method.equals("POST")) {
+                    submit(exchange);
+                } else if (method.equals("GET")) {
+                    list(exchange);
+                } else {
+                    respond(exchange, 405, "Use GET or POST\n");
+                }
+                return;
+            }
+            Job job = findJob(path.substring("/jobs/".length()));
+            if (job == null) {
+                respond(exchange, 404, "No such job\n");
+            } else if (method.equals("GET")) {
+                if (!streams.tryAcquire()) {
+                    respond(exchange, 503, "Too many clients streaming\n");
+                    return;
+                }
+                try {
+                    stream(exchange, job);
+                } finally {
+                    streams.release();
+                }
+            } else if (method.equals("DELETE")) {
+                cancel(job);
+                respond(exchange, 200, job.id + " " + job.getState() + "\n");
+            } else {
+                respond(exchange, 405, "Use GET or DELETE\n");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        Job job;
+        try {
+            Map<String, String> fields = parseForm(exchange.getRequestURI().getRawQuery());
+            fields.putAll(parseForm(readBody(exchange.getRequestBody())));
+            job = new Job(nextId.getAndIncrement(), fields);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+            return;
+        }
+        try {
+            jobs.put(job.id, job);
+            job.future = runners.submit(job::run);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            respond(exchange, 503, "Too many jobs waiting\n");
+            return;
+        }
+        evictFinishedJobs();
+        exchange.getResponseHeaders().set("Location", "/jobs/" + job.id);
+        respond(exchange, 202, job.id + "\n");
+    }
+
+    private void list(HttpExchange exchange) throws IOException {
+        StringBuilder body = new StringBuilder();
+        List<Long> ids = new ArrayList<>(jobs.keySet());
+        ids.sort(null);
+        for (long id : ids) {
+            Job job = jobs.get(id);
+            if (job != null) {
+                body.append(id).append(' ').append(job.getState()).append('\n');
+            }
+        }
+        respond(exchange, 200, body.toString());
+    }
+
+    /**
+     * Sends the rows of a job as they are produced, chunk by chunk, until
+     * the job is over or the client goes away
+     */
+    private void stream(HttpExchange exchange, Job job) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+        out.write(String.join(",", HEADER) + "\n");
+        int sent = 0;
+        try {
+            while (true) {
+                List<String> rows = new ArrayList<>();
+                String end = job.awaitRows(sent, rows);
+                for (String row : rows) {
+                    out.write(row);
+                    out.write('\n');
+                }
+                sent += rows.size();
+                if (end != null) {
+                    out.write("# " + end + "\n");
+                    break;
+                }
+                out.flush();
+            }
+            out.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cancels a job, taking it off the queue if it has not started
+     */
+    private void cancel(Job job) {
+        job.cancel();
+        Future<?> queued = job.future;
+        if (queued instanceof Runnable) {
+            runners.remove((Runnable) queued);
+        }
+    }
+
+    private Job findJob(String id) {
+        try {
+            return jobs.get(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the oldest finished jobs once more than RETAINED_JOBS are kept
+     */
+    private void evictFinishedJobs() {
+        if (jobs.size() <= RETAINED_JOBS) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(jobs.keySet());
+        ids.sort(null);
+        int excess = jobs.size() - RETAINED_JOBS;
+        for (long id : ids) {
+            Job job = jobs.get(id);
+            if (excess > 0 && job != null && job.isOver()) {
+                jobs.remove(id);
+                excess--;
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int n;
+        while ((n = in.read(chunk)) > 0) {
+            buffer.write(chunk, 0, n);
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses form fields, as in a query string: name=value pairs separated
+     * by ampersands or new lines
+     *
+     * @param form URL-encoded fields, or null
+     * @return the fields by name
+     */
+    static Map<String, String> parseForm(String form) {
+        Map<String, String> fields = new HashMap<>();
+        if (form == null) {
+            return fields;
+        }
+        for (String pair : form.split("[&\\r\\n]+")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Not a name=value pair: " + pair);
+            }
+            fields.put(decode(pair.substring(0, equals)).trim(), decode(pair.substring(equals + 1)).trim());
+        }
+        return fields;
+    }
+
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * One run: its specification, its results so far and its state
+     */
+    private static class Job {
+
+        private final long id;
+
+        private final int depth;
+
+        private final int width;
+
+        private final int steps;
+
+        private final int every;
+
+        private final long seed;
+
+        private final SimulationParameters parameters;
+
+        // The step, hawks and squirrels of each row, one after another
+        private final int[] rows;
+
+        private int rowCount;
+
+        private volatile Future<?> future;
+
+        private volatile boolean cancelled;
+
+        private String state = "queued";
+
+        private boolean started;
+
+        private boolean over;
+
+        /**
+         * @param id the job's id
+         * @param fields specification of the run, as form fields
+         */
+        Job(long id, Map<String, String> fields) {
+            this.id = id;
+            depth = intField(fields, "depth", DEFAULT_SIZE);
+            width = intField(fields, "width", DEFAULT_SIZE);
+            steps = intField(fields, "steps", DEFAULT_STEPS);
+            every = intField(fields, "every", 1);
+            seed = fields.containsKey("seed") ? parseLong("seed", fields.get("seed")) : id;
+            if (depth <= 0 || width <= 0 || steps < 0 || every <= 0) {
+                throw new IllegalArgumentException("depth, width and every must be positive, and steps not negative");
+            }
+            if ((long) depth * width > MAX_CELLS) {
+                throw new IllegalArgumentException("The field must have at most " + MAX_CELLS + " cells");
+            }
+            if (steps > MAX_STEPS) {
+                throw new IllegalArgumentException("steps must be at most " + MAX_STEPS);
+            }
+            // A row at the start, one every "every" steps and one at the end
+            int maxRows = steps / every + 2;
+            if (maxRows > MAX_ROWS) {
+                throw new IllegalArgumentException("A job produces at most " + MAX_ROWS
+                        + " rows; make every larger or steps smaller");
+            }
+            rows = new int[3 * maxRows];
+            SimulationParameters defaults = SimulationParameters.DEFAULT;
+            parameters = defaults
+                    .withCreationProbabilities(
+                            doubleField(fields, "hawkCreationProbability", defaults.getHawkCreationProbability()),
+                            doubleField(fields, "squirrelCreationProbability",
+                                    defaults.getSquirrelCreationProbability()))
+                    .withHawk(defaults.getHawk().withBreedingProbability(
+                            doubleField(fields, "hawkBreedingProbability",
+                                    defaults.getHawk().getBreedingProbability())))
+                    .withSquirrel(defaults.getSquirrel().withBreedingProbability(
+                            doubleField(fields, "squirrelBreedingProbability",
+                                    defaults.getSquirrel().getBreedingProbability())));
+        }
+
+        /**
+         * Carries out the run on a worker thread, publishing a row every
+         * "every" steps and after the last step
+         */
+        void run() {
+            if (!start()) {
+                return;
+            }
+            try {
+                Simulator simulator = Simulator.headless(depth, width, parameters, seed);
+                FieldStats stats = new FieldStats();
+                publish(simulator, stats);
+                while (simulator.getStep() < steps && simulator.isViable()) {
+                    if (cancelled || Thread.currentThread().isInterrupted()) {
+                        finish("cancelled at step " + simulator.getStep());
+                        return;
+                    }
+                    simulator.simulateOneStep();
+                    if (simulator.getStep() % every == 0) {
+                        publish(simulator, stats);
+                    }
+                }
+                if (simulator.getStep() % every != 0) {
+                    publish(simulator, stats);
+                }
+                finish("finished at step " + simulator.getStep());
+            } catch (RuntimeException e) {
+                finish("failed: " + e);
+            }
+        }
+
+        /**
+         * Cancels the job: a queued job never starts, and a running one
+         * stops before its next step
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (!started) {
+                finish("cancelled before starting");
+            }
+        }
+
+        /**
+         * Waits for rows after the ones already sent, or for the end of the job
+         *
+         * @param sent number of rows already sent
+         * @param newRows list to add the new rows to
+         * @return how the job ended, if it is over and every row has been taken, or null
+         */
+        synchronized String awaitRows(int sent, List<String> newRows) throws InterruptedException {
+            while (rowCount == sent && !over) {
+                wait();
+            }
+            for (int row = sent; row < rowCount; row++) {
+                newRows.add(rows[3 * row] + "," + rows[3 * row + 1] + "," + rows[3 * row + 2]);
+            }
+            return over ? state : null;
+        }
+
+        synchronized String getState() {
+            return state;
+        }
+
+        synchronized boolean isOver() {
+            return over;
+        }
+
+        private synchronized boolean start() {
+            if (over || cancelled) {
+                finish("cancelled before starting");
+                return false;
+            }
+            started = true;
+            state = "running";
+            return true;
+        }
+
+        private void publish(Simulator simulator, FieldStats stats) {
+            int hawks = stats.getCount(simulator.getField(), Hawk.class);
+            int squirrels = stats.getCount(simulator.getField(), Squirrel.class);
+            synchronized (this) {
+                rows[3 * rowCount] = simulator.getStep();
+                rows[3 * rowCount + 1] = hawks;
+                rows[3 * rowCount + 2] = squirrels;
+                rowCount++;
+                notifyAll();
+            }
+        }
+
+        private synchronized void finish(String end) {
+            if (!over) {
+                over = true;
+                state = end;
+                notifyAll();
+            }
+        }
+
+        private static int intField(Map<String, String> fields, String name, int defaultValue) {
+            String value = fields.get(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " is not a whole number: " + value);
+            }
+        }
+
+        private static long parseLong(String name, String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " is not a whole number: " + value);
+            }
+        }
+
+        private static double doubleField(Map<String, String> fields, String name, double defaultValue) {
+            String value = fields.get(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " is not a number: " + value);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.Field;
+import com.statsim.objectsfirst.FieldStats;
+import com.statsim.objectsfirst.SimulatorView;
+
+import java.awt.Color;
+
+/**
+ * A view that logs the population of every step to a CSV file, and
+ * passes everything on to another view.
+ *
+ * Each row holds the step, the time since the previous step in
+ * nanoseconds, and the number of animals of each logged species.
+ * Rows go through an AsyncCsvLogger, so logging costs the simulation
+ * only the time to build the row.
+ */
+public class LoggingView implements SimulatorView {
+
+    private final SimulatorView view;
+
+    private final AsyncCsvLogger logger;
+
+    private final Class<?>[] species;
+
+    private final FieldStats stats = new FieldStats();
+
+    private long lastStepNanos;
+
+    /**
+     * @param view view to pass everything on to
+     * @param logger logger to write the rows to, with headers from header
+     * @param species the classes of animal to log the population of
+     */
+    public LoggingView(SimulatorView view, AsyncCsvLogger logger, Class<?>... species) {
+        this.view = view;
+        this.logger = logger;
+        this.species = species.clone();
+    }
+
+    /**
+     * Builds the headers of the rows logged for the given species
+     *
+     * @param species the classes of animal to log the population of
+     * @return headers for file
+     */
+    public static String[] header(Class<?>... species) {
+        String[] header = new String[species.length + 2];
+        header[0] = "step";
+        header[1] = "nanos";
+        for (int i = 0; i < species.length; i++) {
+            header[i + 2] = species[i].getSimpleName();
+        }
+        return header;
+    }
+
+    @Override
+    public void setColor(Class<?> animalClass, Color color) {
+        view.setColor(animalClass, color);
+    }
+
+    @Override
+    public void showStatus(int step, Field field) {
+        long now = System.nanoTime();
+        String[] row = new String[species.length + 2];
+        row[0] = Integer.toString(step);
+        row[1] = lastStepNanos == 0 ? "0" : Long.toString(now - lastStepNanos);
+        for (int i = 0; i < species.length; i++) {
+            row[i + 2] = Integer.toString(stats.getCount(field, species[i]));
+        }
+        logger.log(row);
+        lastStepNanos = now;
+        view.showStatus(step, field);
+    }
+
+    @Override
+    public boolean isViable(Field field) {
+        return view.isViable(field);
+    }
+
+    @Override
+    public String getPopulationDetails(Field field) {
+        return view.getPopulationDetails(field);
+    }
+}
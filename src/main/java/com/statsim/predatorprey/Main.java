@@ -1,27 +1,420 @@
 package com.statsim.predatorprey;
 
+import com.statsim.objectsfirst.CellStorage;
+import com.statsim.objectsfirst.Checkpoint;
+import com.statsim.objectsfirst.ChunkedCellStorage;
+import com.statsim.objectsfirst.FlatCellStorage;
+import com.statsim.objectsfirst.OffHeapCellStorage;
+import com.statsim.objectsfirst.GridView;
+import com.statsim.objectsfirst.Hawk;
+import com.statsim.objectsfirst.HeadlessView;
+import com.statsim.objectsfirst.Randomizer;
+import com.statsim.objectsfirst.SimulationParameters;
 import com.statsim.objectsfirst.Simulator;
+import com.statsim.objectsfirst.SimulatorView;
+import com.statsim.objectsfirst.Squirrel;
+import com.statsim.objectsfirst.StepMetrics;
 
+import javax.management.JMException;
+import java.awt.GraphicsEnvironment;
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Application entry point
+ *
+ * Options:
+ *   --headless         run without a window
+ *   --depth N          depth of the field (default 100)
+ *   --width N          width of the field (default 100)
+ *   --storage KIND     how the cells of the field are kept: flat (the default);
+ *                      chunked, which only keeps the 64 by 64 blocks with
+ *                      animals in them, for large fields that are mostly empty;
+ *                      offheap, outside the Java heap; or mapped:FILE, outside
+ *                      the heap in a file that holds the grid when the run ends
+ *   --log FILE         log the population of every step to a CSV file
+ *   --run-log FILE     log a summary of the run to a CSV file
+ *   --series FILE      record the statistics of every step in a binary series file
+ *   --checkpoint FILE  keep a checkpoint of the run in a file
+ *   --checkpoint-every N
+ *                      steps between checkpoints (default 1000)
+ *   --resume FILE      carry on from a checkpoint instead of starting afresh
+ *   --metrics-log FILE write step metrics to a CSV file at regular intervals;
+ *                      phase timings need -Dstatsim.metrics=true
+ *   --metrics-every MS milliseconds between metrics rows (default 1000)
+ *   --sweep CSV        run a sweep of configurations headless and summarise
+ *                      every run in a CSV file, instead of a single run
+ *   --seeds N          seeds to run each configuration of a sweep with (default 10)
+ *   --ensemble CSV     run replicates of the default configuration headless and
+ *                      write per-step ensemble statistics to a CSV file
+ *   --replicates N     replicates in an ensemble (default 100)
+ *   --export-csv SERIES CSV
+ *                      convert a series file to CSV instead of running
+ *   --serve PORT       run headless simulations on request over HTTP on
+ *                      localhost until stopped, instead of a single run;
+ *                      see JobService
+ *   --serve-threads N  runs carried out at once by the service (default: all cores)
  */
 public class Main {
+    private static final int DEPTH = 100;
+
+    private static final int WIDTH = 100;
+
+    private static final int STEPS = 500;
+
+    private static final int CHECKPOINT_EVERY = 1000;
+
+    private static final int SWEEP_SEEDS = 10;
+
+    private static final int REPLICATES = 100;
+
+    private static final int METRICS_EVERY = 1000;
+
+    private static final int JOB_QUEUE = 1000;
+
     public static void main(String[] args) {
-        String[] header = {"test", "test2"};
+        String exportPath = optionValue(args, "--export-csv");
+        if (exportPath != null) {
+            exportCsv(exportPath, args);
+            return;
+        }
+        String servePort = optionValue(args, "--serve");
+        if (servePort != null) {
+            serve(Integer.parseInt(servePort),
+                    intOption(args, "--serve-threads", Runtime.getRuntime().availableProcessors()));
+            return;
+        }
+        String sweepPath = optionValue(args, "--sweep");
+        if (sweepPath != null) {
+            sweep(sweepPath, intOption(args, "--seeds", SWEEP_SEEDS));
+            return;
+        }
+        String ensemblePath = optionValue(args, "--ensemble");
+        if (ensemblePath != null) {
+            ensemble(ensemblePath, intOption(args, "--replicates", REPLICATES));
+            return;
+        }
+
+        int depth = intOption(args, "--depth", DEPTH);
+        int width = intOption(args, "--width", WIDTH);
+        CellStorage cells;
+        try {
+            cells = cellStorage(optionValue(args, "--storage"), depth, width);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (cells == null) {
+            return;
+        }
+
+        SimulatorView view;
+        if (hasFlag(args, "--headless") || GraphicsEnvironment.isHeadless()) {
+            view = new HeadlessView();
+        } else {
+            view = new GridView(depth, width);
+        }
+
+        AsyncCsvLogger stepLog = null;
+        StepSeriesWriter series = null;
+        MetricsLog metricsLog = null;
+        String stepLogPath = optionValue(args, "--log");
+        String seriesPath = optionValue(args, "--series");
+        try {
+            if (seriesPath != null) {
+                series = new StepSeriesWriter(seriesPath, SeriesView.names(Hawk.class, Squirrel.class));
+                view = new SeriesView(view, series, Hawk.class, Squirrel.class);
+            }
+            if (stepLogPath != null) {
+                stepLog = new AsyncCsvLogger(stepLogPath, LoggingView.header(Hawk.class, Squirrel.class));
+                view = new LoggingView(view, stepLog, Hawk.class, Squirrel.class);
+            }
+
+            long start = System.nanoTime();
+            Simulator simulator = new Simulator(depth, width, view, cells);
+            StepMetrics metrics = simulator.getField().getMetrics();
+            registerMetrics(metrics);
+            String metricsPath = optionValue(args, "--metrics-log");
+            if (metricsPath != null) {
+                metricsLog = new MetricsLog(metricsPath, metrics, intOption(args, "--metrics-every", METRICS_EVERY));
+            }
+            String resumePath = optionValue(args, "--resume");
+            if (resumePath != null) {
+                simulator.restore(Checkpoint.read(resumePath));
+            }
+            run(simulator, optionValue(args, "--checkpoint"), intOption(args, "--checkpoint-every", CHECKPOINT_EVERY));
+            long nanos = System.nanoTime() - start;
+            System.out.println("Step " + simulator.getStep() + ": " + simulator.getPopulationDetails());
+            System.out.println("Cells take " + cells.getAllocatedBytes() / 1024 + " KB, bitboards "
+                    + simulator.getField().getBitboardBytes() / 1024 + " KB");
+
+            if (stepLog != null) {
+                stepLog.close();
+                System.out.println("Logged " + stepLog.getWrittenRows() + " steps to " + stepLogPath
+                        + " (" + stepLog.getDroppedRows() + " dropped, "
+                        + stepLog.getBlockedRows() + " waited for the writer)");
+            }
+
+            if (metricsLog != null) {
+                metricsLog.close();
+            }
+
+            if (series != null) {
+                series.close();
+                System.out.println("Recorded " + series.getRowCount() + " steps in " + seriesPath);
+            }
+
+            String runLogPath = optionValue(args, "--run-log");
+            if (runLogPath != null) {
+                String[] header = {"depth", "width", "steps", "nanos", "population"};
+                CsvLogger runLog = new CsvLogger(runLogPath, header);
+                runLog.log(new String[]{Integer.toString(depth), Integer.toString(width),
+                        Integer.toString(simulator.getStep()), Long.toString(nanos),
+                        simulator.getPopulationDetails().trim()});
+                runLog.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeQuietly(stepLog);
+            closeQuietly(series);
+            closeQuietly(metricsLog);
+            if (cells instanceof Closeable) {
+                closeQuietly((Closeable) cells);
+            }
+        }
+    }
+
+    /**
+     * Creates the storage for the cells of the field named by --storage
+     *
+     * @param kind flat, chunked, offheap, mapped:FILE, or null for flat
+     * @param depth depth of the field
+     * @param width width of the field
+     * @return storage, or null if the kind or the size is not valid, which has been reported
+     * @throws IOException if the file to map cannot be opened
+     */
+    private static CellStorage cellStorage(String kind, int depth, int width) throws IOException {
+        if (depth <= 0 || width <= 0 || (long) depth * width > Integer.MAX_VALUE) {
+            System.out.println("A field of " + depth + " by " + width + " cells cannot be represented");
+            return null;
+        }
+        if (kind == null || kind.equals("flat")) {
+            return new FlatCellStorage(depth * width);
+        }
+        if (kind.equals("chunked")) {
+            return new ChunkedCellStorage(depth, width);
+        }
+        if (kind.equals("offheap")) {
+            return OffHeapCellStorage.allocate(depth * width);
+        }
+        if (kind.startsWith("mapped:")) {
+            return OffHeapCellStorage.map(Paths.get(kind.substring("mapped:".length())), depth * width);
+        }
+        System.out.println("Unknown storage " + kind + "; use flat, chunked, offheap or mapped:FILE");
+        return null;
+    }
+
+    /**
+     * Publishes the metrics of the run over JMX, as
+     * com.statsim:type=StepMetrics,name="main"
+     *
+     * @param metrics metrics of the run
+     */
+    private static void registerMetrics(StepMetrics metrics) {
         try {
-            CsvLogger e = new CsvLogger("./file.csv", header);
-            String[] aw = {"ewer", "ewrwer", "ewrwer"};
-            String[] aw2 = {"ewer", "ewrwer"};
-            e.log(aw);
-            e.log(aw2);
-            e.close();
+            metrics.register("main");
+        } catch (JMException e) {
+            System.err.println("Cannot publish metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the simulation up to the last step, or until it is no longer
+     * viable, taking a checkpoint at regular intervals if asked to
+     *
+     * @param simulator simulation to run
+     * @param checkpointPath file to keep the checkpoint in, or null
+     * @param checkpointEvery steps between checkpoints
+     */
+    private static void run(Simulator simulator, String checkpointPath, int checkpointEvery) throws IOException {
+        if (checkpointPath == null) {
+            simulator.simulate(STEPS - simulator.getStep());
+            return;
+        }
+        try (Checkpointer checkpointer = new Checkpointer(checkpointPath)) {
+            while (simulator.getStep() < STEPS && simulator.isViable()) {
+                simulator.simulateOneStep();
+                if (simulator.getStep() % checkpointEvery == 0) {
+                    checkpointer.save(simulator.checkpoint());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sweeps the breeding probability of hawks and the starting density
+     * of squirrels, on all cores
+     *
+     * @param csvPath file to write the summaries to
+     * @param seedCount number of seeds to run each configuration with
+     */
+    private static void sweep(String csvPath, int seedCount) {
+        List<SimulationParameters> configurations = new ArrayList<>();
+        for (double breeding : new double[]{0.04, 0.06, 0.08, 0.10, 0.12}) {
+            for (double squirrels : new double[]{0.04, 0.08, 0.12}) {
+                SimulationParameters defaults = SimulationParameters.DEFAULT;
+                configurations.add(defaults
+                        .withCreationProbabilities(defaults.getHawkCreationProbability(), squirrels)
+                        .withHawk(defaults.getHawk().withBreedingProbability(breeding)));
+            }
+        }
+        long[] seeds = new long[seedCount];
+        for (int i = 0; i < seedCount; i++) {
+            seeds[i] = Randomizer.deriveSeed(Randomizer.getSeed(), i);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        try {
+            int runs = new ParameterSweep(DEPTH, WIDTH, STEPS, threads).run(configurations, seeds, csvPath);
+            System.out.println("Summarised " + runs + " runs in " + csvPath + " ("
+                    + (System.nanoTime() - start) / 1000000 + " ms on " + threads + " threads)");
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
+
+    /**
+     * Runs replicates of the default configuration on all cores and
+     * writes the statistics of the ensemble
+     *
+     * @param csvPath file to write the statistics to
+     * @param replicates number of replicates
+     */
+    private static void ensemble(String csvPath, int replicates) {
+        long[] seeds = new long[replicates];
+        for (int i = 0; i < replicates; i++) {
+            seeds[i] = Randomizer.deriveSeed(Randomizer.getSeed(), i);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        try {
+            EnsembleStatistics statistics = new EnsembleRunner(DEPTH, WIDTH, STEPS, threads)
+                    .run(SimulationParameters.DEFAULT, seeds, Hawk.class, Squirrel.class);
+            statistics.writeCsv(csvPath);
+            System.out.println("Wrote statistics of " + statistics.getReplicates() + " replicates to " + csvPath
+                    + " (" + (System.nanoTime() - start) / 1000000 + " ms on " + threads + " threads)");
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        Simulator simulator = new Simulator();
-        simulator.simulate(500);
+    /**
+     * Serves simulation jobs over HTTP on localhost until the program is
+     * stopped
+     *
+     * @param port port to listen on
+     * @param threads number of runs to carry out at once
+     */
+    private static void serve(int port, int threads) {
+        try {
+            JobService service = new JobService(port, threads, JOB_QUEUE);
+            Runtime.getRuntime().addShutdownHook(new Thread(service::close));
+            System.out.println("Serving jobs at http://localhost:" + service.getPort() + "/jobs on "
+                    + threads + " threads");
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Converts the series file following --export-csv to the CSV file after it
+     *
+     * @param seriesPath series file to read
+     * @param args command line arguments
+     */
+    private static void exportCsv(String seriesPath, String[] args) {
+        String csvPath = optionValue(args, seriesPath);
+        if (csvPath == null) {
+            System.out.println("Usage: --export-csv SERIES CSV");
+            return;
+        }
+        try (StepSeriesReader reader = new StepSeriesReader(seriesPath)) {
+            reader.exportCsv(csvPath, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            System.out.println("Exported " + reader.getRowCount() + " steps to " + csvPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes something if it is there, ignoring failures, which have
+     * already been reported
+     *
+     * @param closeable thing to close, or null
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Already reported.
+            }
+        }
+    }
+
+    /**
+     * Checks whether a flag was given on the command line
+     *
+     * @param args command line arguments
+     * @param flag flag to look for
+     * @return true if the flag is present
+     */
+    private static boolean hasFlag(String[] args, String flag) {
+        for (String arg : args) {
+            if (arg.equals(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the number given for an option on the command line
+     *
+     * @param args command line arguments
+     * @param option option to look for
+     * @param defaultValue value to use if the option is absent
+     * @return the number following the option, or the default
+     */
+    private static int intOption(String[] args, String option, int defaultValue) {
+        String value = optionValue(args, option);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Finds the value given for an option on the command line
+     *
+     * @param args command line arguments
+     * @param option option to look for
+     * @return the argument following the option, or null if it is absent
+     */
+    private static String optionValue(String[] args, String option) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(option)) {
+                return args[i + 1];
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,121 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.StepMetricsMBean;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the step metrics of a simulation to a CSV file at a fixed
+ * interval, on a background thread, so that a run can be followed or
+ * looked at afterwards without a JMX console.
+ *
+ * Each row holds the running totals of steps and events, and the mean
+ * and 99th percentile time per step of every phase so far.
+ */
+public class MetricsLog implements Closeable {
+
+    private final StepMetricsMBean metrics;
+
+    private final CsvLogger csv;
+
+    private final ScheduledExecutorService executor;
+
+    private final long start;
+
+    private boolean closed;
+
+    // Guards the CSV writes, so that close can wait for the executor without holding it
+    private final Object writeLock = new Object();
+
+    private boolean csvClosed;
+
+    /**
+     * Starts logging
+     *
+     * @param filePath file to write the metrics to
+     * @param metrics metrics to log
+     * @param intervalMillis milliseconds between rows
+     */
+    public MetricsLog(String filePath, StepMetricsMBean metrics, long intervalMillis) throws IOException {
+        this.metrics = metrics;
+        this.csv = new CsvLogger(filePath, header(metrics.getPhases()));
+        this.start = System.nanoTime();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::logRow, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops logging, after writing a last row. Closing again does nothing.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            writeRow();
+            csvClosed = true;
+            csv.close();
+        }
+    }
+
+    private static String[] header(String[] phases) {
+        String[] header = new String[7 + 2 * phases.length];
+        header[0] = "millis";
+        header[1] = "steps";
+        header[2] = "births";
+        header[3] = "starvations";
+        header[4] = "old age deaths";
+        header[5] = "overcrowding deaths";
+        header[6] = "kills";
+        for (int i = 0; i < phases.length; i++) {
+            header[7 + 2 * i] = phases[i] + " mean nanos";
+            header[8 + 2 * i] = phases[i] + " p99 nanos";
+        }
+        return header;
+    }
+
+    private void logRow() {
+        synchronized (writeLock) {
+            // A tick still running when close gave up waiting finds the file closed
+            if (!csvClosed) {
+                writeRow();
+            }
+        }
+    }
+
+    private void writeRow() {
+        double[] means = metrics.getMeanNanos();
+        long[] p99 = metrics.getP99Nanos();
+        String[] row = new String[7 + 2 * means.length];
+        row[0] = Long.toString((System.nanoTime() - start) / 1000000);
+        row[1] = Long.toString(metrics.getSteps());
+        row[2] = Long.toString(metrics.getBirths());
+        row[3] = Long.toString(metrics.getStarvations());
+        row[4] = Long.toString(metrics.getOldAgeDeaths());
+        row[5] = Long.toString(metrics.getOvercrowdingDeaths());
+        row[6] = Long.toString(metrics.getKills());
+        for (int i = 0; i < means.length; i++) {
+            row[7 + 2 * i] = Long.toString(Math.round(means[i]));
+            row[8 + 2 * i] = Long.toString(p99[i]);
+        }
+        csv.log(row);
+    }
+}
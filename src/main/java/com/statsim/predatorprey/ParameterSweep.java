@@ -0,0 +1,121 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.FieldStats;
+import com.statsim.objectsfirst.Hawk;
+import com.statsim.objectsfirst.SimulationParameters;
+import com.statsim.objectsfirst.Simulator;
+import com.statsim.objectsfirst.Squirrel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a grid of configurations and seeds as independent headless
+ * simulations, spread over a pool of threads, and collects a summary of
+ * every run into one CSV file.
+ *
+ * Each simulation holds its own configuration and random number
+ * generator, so runs do not affect each other and a run gives the same
+ * summary whichever thread it lands on. Summaries are written in run
+ * order as soon as all earlier runs are done, so the output is the same
+ * from one sweep to the next.
+ */
+public class ParameterSweep {
+
+    public static final String[] HEADER = {
+            "run", "configuration", "seed", "steps", "hawks", "squirrels",
+            "peak hawks", "peak squirrels", "nanos", "parameters"
+    };
+
+    private final int depth;
+
+    private final int width;
+
+    private final int steps;
+
+    private final int threads;
+
+    /**
+     * @param depth depth of the field of every run
+     * @param width width of the field of every run
+     * @param steps most steps in a run; runs also stop when they are no longer viable
+     * @param threads number of runs to carry out at once
+     */
+    public ParameterSweep(int depth, int width, int steps, int threads) {
+        this.depth = depth;
+        this.width = width;
+        this.steps = steps;
+        this.threads = threads;
+    }
+
+    /**
+     * Runs every configuration with every seed, and writes the summary
+     * of each run to a CSV file. Runs are numbered configuration by
+     * configuration, and seed by seed within a configuration.
+     *
+     * @param configurations configurations to run
+     * @param seeds seeds to run each configuration with
+     * @param csvPath file to write the summaries to
+     * @return the number of runs
+     */
+    public int run(List<SimulationParameters> configurations, long[] seeds, String csvPath)
+            throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CsvLogger csv = new CsvLogger(csvPath, HEADER);
+        try {
+            List<Future<String[]>> runs = new ArrayList<>();
+            for (int c = 0; c < configurations.size(); c++) {
+                for (long seed : seeds) {
+                    int run = runs.size();
+                    int configuration = c;
+                    SimulationParameters parameters = configurations.get(c);
+                    runs.add(executor.submit(() -> summarise(run, configuration, parameters, seed)));
+                }
+            }
+            for (Future<String[]> run : runs) {
+                csv.log(run.get());
+            }
+            return runs.size();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A run failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            csv.close();
+        }
+    }
+
+    /**
+     * Carries out one run
+     *
+     * @return the summary of the run, as a row of the CSV file
+     */
+    private String[] summarise(int run, int configuration, SimulationParameters parameters, long seed) {
+        long start = System.nanoTime();
+        Simulator simulator = Simulator.headless(depth, width, parameters, seed);
+        FieldStats stats = new FieldStats();
+        int peakHawks = stats.getCount(simulator.getField(), Hawk.class);
+        int peakSquirrels = stats.getCount(simulator.getField(), Squirrel.class);
+        while (simulator.getStep() < steps && simulator.isViable()) {
+            simulator.simulateOneStep();
+            peakHawks = Math.max(peakHawks, stats.getCount(simulator.getField(), Hawk.class));
+            peakSquirrels = Math.max(peakSquirrels, stats.getCount(simulator.getField(), Squirrel.class));
+        }
+        return new String[]{
+                Integer.toString(run),
+                Integer.toString(configuration),
+                Long.toString(seed),
+                Integer.toString(simulator.getStep()),
+                Integer.toString(stats.getCount(simulator.getField(), Hawk.class)),
+                Integer.toString(stats.getCount(simulator.getField(), Squirrel.class)),
+                Integer.toString(peakHawks),
+                Integer.toString(peakSquirrels),
+                Long.toString(System.nanoTime() - start),
+                parameters.toString()
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package com.statsim.predatorprey;
+
+/**
+ * Approximate quantiles of a stream of non-negative counts in a fixed
+ * amount of memory, whatever the number of values.
+ *
+ * Values are counted in buckets whose bounds grow geometrically, so
+ * every quantile is returned to within a relative error of the given
+ * accuracy: with an accuracy of 0.01, a true quantile of 5000 is
+ * reported between 4950 and 5050. Zero has a bucket of its own. The
+ * number of buckets is at most about ln(maximum value) / accuracy /
+ * 2, around 1100 for values up to two billion at one percent, but only
+ * the buckets between the lowest and the highest value added are kept:
+ * counts that stay within a narrow band, such as the population of one
+ * species at one step across an ensemble, need only a few dozen.
+ *
+ * Sketches with the same accuracy can be merged by adding their
+ * buckets, which gives exactly the sketch of all the values together.
+ */
+public class QuantileSketch {
+
+    public static final double DEFAULT_ACCURACY = 0.01;
+
+    private final double accuracy;
+
+    // Logarithm of the ratio between the bounds of consecutive buckets
+    private final double logGamma;
+
+    private long zeros;
+
+    // Bucket i holds values in (gamma^(offset+i-1), gamma^(offset+i)]
+    private long[] buckets;
+
+    // The index of the bucket held at buckets[0]
+    private int offset;
+
+    private long count;
+
+    /**
+     * Creates a sketch with the default accuracy
+     */
+    public QuantileSketch() {
+        this(DEFAULT_ACCURACY);
+    }
+
+    /**
+     * @param accuracy relative error of the quantiles, between 0 and 1
+     */
+    public QuantileSketch(double accuracy) {
+        if (accuracy <= 0 || accuracy >= 1) {
+            throw new IllegalArgumentException("Accuracy must be between 0 and 1");
+        }
+        this.accuracy = accuracy;
+        this.logGamma = Math.log((1 + accuracy) / (1 - accuracy));
+        this.buckets = new long[0];
+    }
+
+    /**
+     * Adds a value
+     *
+     * @param value non-negative value to add
+     */
+    public void add(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        count++;
+        if (value == 0) {
+            zeros++;
+            return;
+        }
+        int index = (int) Math.ceil(Math.log(value) / logGamma);
+        cover(index, index);
+        buckets[index - offset]++;
+    }
+
+    /**
+     * Adds all the values of another sketch to this one
+     *
+     * @param other sketch with the same accuracy
+     */
+    public void merge(QuantileSketch other) {
+        if (other.accuracy != accuracy) {
+            throw new IllegalArgumentException("Sketches of different accuracy");
+        }
+        if (other.buckets.length > 0) {
+            cover(other.offset, other.offset + other.buckets.length - 1);
+            int shift = other.offset - offset;
+            for (int i = 0; i < other.buckets.length; i++) {
+                buckets[shift + i] += other.buckets[i];
+            }
+        }
+        zeros += other.zeros;
+        count += other.count;
+    }
+
+    /**
+     * @return number of values added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns a quantile of the values
+     *
+     * @param quantile quantile to return, between 0 and 1, such as 0.5 for the median
+     * @return the quantile, to within the sketch's accuracy, or NaN if there are no values
+     */
+    public double getQuantile(double quantile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        if (rank < zeros) {
+            return 0;
+        }
+        long seen = zeros;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen > rank) {
+                // The middle of the bucket, in relative terms.
+                return 2 * Math.exp((offset + i) * logGamma) / (Math.exp(logGamma) + 1);
+            }
+        }
+        return 2 * Math.exp((offset + buckets.length - 1) * logGamma) / (Math.exp(logGamma) + 1);
+    }
+
+    /**
+     * Grows the buckets, in either direction, to hold every index from low to high.
+     * Growing by at least half again keeps the copies few while values spread out.
+     */
+    private void cover(int low, int high) {
+        if (buckets.length == 0) {
+            buckets = new long[high - low + 1];
+            offset = low;
+            return;
+        }
+        int end = offset + buckets.length;
+        if (low >= offset && high < end) {
+            return;
+        }
+        int slack = Math.max(1, buckets.length / 2);
+        int newOffset = low < offset ? Math.max(0, Math.min(low, offset - slack)) : offset;
+        int newEnd = high >= end ? Math.max(high + 1, end + slack) : end;
+        long[] grown = new long[newEnd - newOffset];
+        System.arraycopy(buckets, 0, grown, offset - newOffset, buckets.length);
+        buckets = grown;
+        offset = newOffset;
+    }
+}
@@ -0,0 +1,75 @@
+package com.statsim.predatorprey;
+
+/**
+ * Mean and variance of a stream of values, updated one value at a time
+ * with Welford's method, without keeping the values.
+ *
+ * Two sets of moments over different values can be merged into the
+ * moments of all the values together, so each thread can keep its own
+ * and combine them at the end.
+ */
+public class RunningMoments {
+
+    private long count;
+
+    private double mean;
+
+    // Sum of squared differences from the mean
+    private double m2;
+
+    /**
+     * Adds a value
+     *
+     * @param value value to add
+     */
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    /**
+     * Adds all the values of other moments to these ones
+     *
+     * @param other moments to merge into these
+     */
+    public void merge(RunningMoments other) {
+        if (other.count == 0) {
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+    }
+
+    /**
+     * @return number of values added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return mean of the values, or 0 if there are none
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return sample variance of the values, or 0 if there are fewer than two
+     */
+    public double getVariance() {
+        return count > 1 ? m2 / (count - 1) : 0;
+    }
+
+    /**
+     * @return sample standard deviation of the values
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+}
@@ -0,0 +1,113 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.Field;
+import com.statsim.objectsfirst.SimulatorView;
+import com.statsim.objectsfirst.StepEvents;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A view that records the statistics of every step in a binary series
+ * file, and passes everything on to another view.
+ *
+ * For each species it records the population and the births, deaths
+ * and kills of the step, as tallied by the field.
+ */
+public class SeriesView implements SimulatorView {
+
+    private final SimulatorView view;
+
+    private final StepSeriesWriter writer;
+
+    private final Class<?>[] species;
+
+    private final int[] population;
+
+    private final int[] births;
+
+    private final int[] deaths;
+
+    private final int[] kills;
+
+    /**
+     * @param view view to pass everything on to
+     * @param writer writer to record the steps with, created with names from names
+     * @param species the classes of animal to record
+     */
+    public SeriesView(SimulatorView view, StepSeriesWriter writer, Class<?>... species) {
+        this.view = view;
+        this.writer = writer;
+        this.species = species.clone();
+        this.population = new int[species.length];
+        this.births = new int[species.length];
+        this.deaths = new int[species.length];
+        this.kills = new int[species.length];
+    }
+
+    /**
+     * Builds the species names of a series recorded for the given species
+     *
+     * @param species the classes of animal to record
+     * @return the names of the species
+     */
+    public static String[] names(Class<?>... species) {
+        String[] names = new String[species.length];
+        for (int i = 0; i < species.length; i++) {
+            names[i] = species[i].getSimpleName();
+        }
+        return names;
+    }
+
+    @Override
+    public void setColor(Class<?> animalClass, Color color) {
+        view.setColor(animalClass, color);
+    }
+
+    @Override
+    public void showStatus(int step, Field field) {
+        StepEvents events = field.getEvents();
+        for (int i = 0; i < species.length; i++) {
+            int code = speciesCode(field, species[i]);
+            if (code == Field.EMPTY) {
+                population[i] = births[i] = deaths[i] = kills[i] = 0;
+            } else {
+                population[i] = field.getPopulation(code);
+                births[i] = events.getBirths(code);
+                deaths[i] = events.getDeaths(code);
+                kills[i] = events.getKills(code);
+            }
+        }
+        try {
+            writer.write(step, population, births, deaths, kills);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        view.showStatus(step, field);
+    }
+
+    @Override
+    public boolean isViable(Field field) {
+        return view.isViable(field);
+    }
+
+    @Override
+    public String getPopulationDetails(Field field) {
+        return view.getPopulationDetails(field);
+    }
+
+    /**
+     * Finds the species code of a class of animal in a field
+     *
+     * @return the code, or EMPTY if the class is not in the field
+     */
+    private static int speciesCode(Field field, Class<?> animalClass) {
+        for (int code = 1; code < field.getSpeciesCodes(); code++) {
+            if (field.getSpeciesClass(code) == animalClass) {
+                return code;
+            }
+        }
+        return Field.EMPTY;
+    }
+}
@@ -0,0 +1,491 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.Field;
+import com.statsim.objectsfirst.FieldSnapshot;
+import com.statsim.objectsfirst.FieldStats;
+import com.statsim.objectsfirst.SimulatorView;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A view that publishes a StepRecord for every step to any number of
+ * subscribers, and passes everything on to another view.
+ *
+ * Publishing follows the reactive streams protocol of Java 9's Flow:
+ * a subscriber is handed a Subscription, and is given records only as
+ * it asks for them with request(n). Each subscriber has a bounded
+ * buffer of its own and a thread of its own to be called on, so a slow
+ * subscriber holds up neither the others nor, unless it asks to, the
+ * simulation. When its buffer is full, the overflow policy decides
+ * whether the simulation waits for room, which throttles the run to the
+ * subscriber's pace, or the oldest waiting record is dropped, so the
+ * subscriber samples the run and always catches up with its latest steps.
+ *
+ * Every frameInterval steps, records also carry a frame of the field,
+ * with the colors given to the view; other records carry none.
+ * Closing the publisher completes every subscriber once it has been
+ * given the buffered records it asks for; records it has not asked for
+ * by then are dropped, so a subscriber that stops asking cannot keep
+ * the publisher from closing.
+ */
+public class StepPublisher implements SimulatorView, Closeable {
+
+    /**
+     * What to do with a record published while a subscriber's buffer is full
+     */
+    public enum OverflowPolicy {
+        /** Wait until the subscriber makes room for it */
+        BLOCK,
+        /** Drop the oldest record waiting, and count it as dropped */
+        SAMPLE
+    }
+
+    /**
+     * Receives the records of a publisher, all on the same thread
+     */
+    public interface Subscriber {
+
+        /**
+         * Called before anything else, with the subscription to ask for records with
+         *
+         * @param subscription the subscription
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with each record asked for
+         *
+         * @param record the record of a step
+         */
+        void onNext(StepRecord record);
+
+        /**
+         * Called when the subscription fails, after which nothing else is called
+         *
+         * @param failure what went wrong
+         */
+        void onError(Throwable failure);
+
+        /**
+         * Called when the publisher is closed and every record has been given,
+         * after which nothing else is called
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a publisher and one of its subscribers
+     */
+    public interface Subscription {
+
+        /**
+         * Asks for more records. Records asked for and not yet given add up.
+         *
+         * @param n the number of records to add, which must be positive
+         */
+        void request(long n);
+
+        /**
+         * Stops giving records. Records still in the buffer are dropped.
+         */
+        void cancel();
+    }
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    // How long closing waits for subscribers still being given records
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private static final Color EMPTY_COLOR = Color.white;
+
+    private static final Color UNKNOWN_COLOR = Color.orange;
+
+    private static final AtomicInteger subscriptions = new AtomicInteger();
+
+    private final SimulatorView view;
+
+    private final int frameInterval;
+
+    private final Map<Class<?>, Color> colors = new HashMap<>();
+
+    private final FieldStats stats = new FieldStats();
+
+    private final List<StepSubscription> subscribers = new ArrayList<>();
+
+    // Records dropped and time blocked for subscribers since forgotten
+    private long retiredDropped;
+
+    private long retiredBlockedNanos;
+
+    private int[] palette;
+
+    private boolean closed;
+
+    /**
+     * Creates a publisher whose records carry no frames
+     *
+     * @param view view to pass everything on to
+     */
+    public StepPublisher(SimulatorView view) {
+        this(view, 0);
+    }
+
+    /**
+     * @param view view to pass everything on to
+     * @param frameInterval the number of steps between two records with a
+     *                      frame of the field, or 0 for no frames
+     */
+    public StepPublisher(SimulatorView view, int frameInterval) {
+        if (frameInterval < 0) {
+            throw new IllegalArgumentException("Frame interval must not be negative");
+        }
+        this.view = view;
+        this.frameInterval = frameInterval;
+    }
+
+    /**
+     * Subscribes with the default buffer capacity, throttling the
+     * simulation when the buffer is full
+     *
+     * @param subscriber the subscriber
+     */
+    public void subscribe(Subscriber subscriber) {
+        subscribe(subscriber, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Subscribes to the records of the steps shown from now on. The
+     * subscriber's onSubscribe is called on its own thread.
+     *
+     * @param subscriber the subscriber
+     * @param capacity the most records waiting to be given to it
+     * @param policy what to do with records published while its buffer is full
+     */
+    public synchronized void subscribe(Subscriber subscriber, int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (closed) {
+            throw new IllegalStateException("Publisher is closed");
+        }
+        StepSubscription subscription = new StepSubscription(subscriber, capacity, policy);
+        subscribers.add(subscription);
+        subscription.start();
+    }
+
+    /**
+     * @return the number of subscribers that have not cancelled or been completed
+     */
+    public int getSubscriberCount() {
+        return liveSubscribers().size();
+    }
+
+    /**
+     * @return the number of records dropped across all subscribers because their buffers were full
+     */
+    public synchronized long getDroppedRecords() {
+        long dropped = retiredDropped;
+        for (StepSubscription subscription : subscribers) {
+            dropped += subscription.getDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return the total time the simulation spent waiting for room in full buffers, in nanoseconds
+     */
+    public synchronized long getBlockedNanos() {
+        long blocked = retiredBlockedNanos;
+        for (StepSubscription subscription : subscribers) {
+            blocked += subscription.getBlockedNanos();
+        }
+        return blocked;
+    }
+
+    @Override
+    public void setColor(Class<?> animalClass, Color color) {
+        colors.put(animalClass, color);
+        palette = null;
+        view.setColor(animalClass, color);
+    }
+
+    @Override
+    public void showStatus(int step, Field field) {
+        List<StepSubscription> targets = liveSubscribers();
+        if (!targets.isEmpty()) {
+            FieldSnapshot frame = null;
+            if (frameInterval > 0 && step % frameInterval == 0) {
+                frame = FieldSnapshot.of(step, field, getPalette(field), stats.getPopulationDetails(field));
+            }
+            StepRecord record = StepRecord.of(step, field, frame);
+            for (StepSubscription subscription : targets) {
+                subscription.offer(record);
+            }
+        }
+        view.showStatus(step, field);
+    }
+
+    @Override
+    public boolean isViable(Field field) {
+        return view.isViable(field);
+    }
+
+    @Override
+    public String getPopulationDetails(Field field) {
+        return view.getPopulationDetails(field);
+    }
+
+    /**
+     * Completes every subscriber once it has been given the buffered
+     * records it asks for, and waits until each has been completed or has
+     * cancelled. A subscriber still busy after CLOSE_TIMEOUT_MILLIS is
+     * cancelled and left to finish on its own thread.
+     */
+    @Override
+    public void close() {
+        List<StepSubscription> targets;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            targets = new ArrayList<>(subscribers);
+        }
+        for (StepSubscription subscription : targets) {
+            subscription.complete();
+        }
+        boolean interrupted = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        for (StepSubscription subscription : targets) {
+            long left;
+            while (subscription.deliverer.isAlive() && (left = deadline - System.nanoTime()) > 0) {
+                try {
+                    subscription.deliverer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (subscription.deliverer.isAlive()) {
+                subscription.cancel();
+            }
+        }
+        liveSubscribers();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the subscribers that have not cancelled or been completed,
+     * and forgets the others
+     */
+    private synchronized List<StepSubscription> liveSubscribers() {
+        List<StepSubscription> live = new ArrayList<>(subscribers.size());
+        for (Iterator<StepSubscription> i = subscribers.iterator(); i.hasNext(); ) {
+            StepSubscription subscription = i.next();
+            if (subscription.isDone()) {
+                retiredDropped += subscription.getDropped();
+                retiredBlockedNanos += subscription.getBlockedNanos();
+                i.remove();
+            } else {
+                live.add(subscription);
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Returns the color of each species code of a field. A new array is
+     * made whenever the colors change, since frames keep it.
+     */
+    private int[] getPalette(Field field) {
+        if (palette == null || palette.length != field.getSpeciesCodes()) {
+            palette = new int[field.getSpeciesCodes()];
+            palette[Field.EMPTY] = EMPTY_COLOR.getRGB();
+            for (int code = 1; code < palette.length; code++) {
+                Color color = colors.get(field.getSpeciesClass(code));
+                palette[code] = (color == null ? UNKNOWN_COLOR : color).getRGB();
+            }
+        }
+        return palette;
+    }
+
+    /**
+     * A subscriber's buffer, demand and delivery thread. The simulation
+     * thread offers records; the delivery thread gives them to the
+     * subscriber as it asks for them.
+     */
+    private static class StepSubscription implements Subscription {
+
+        private final Subscriber subscriber;
+
+        private final ArrayDeque<StepRecord> buffer;
+
+        private final int capacity;
+
+        private final OverflowPolicy policy;
+
+        private final Thread deliverer;
+
+        // Records asked for and not yet given
+        private long demand;
+
+        private boolean cancelled;
+
+        private boolean completed;
+
+        private boolean done;
+
+        private Throwable failure;
+
+        private long dropped;
+
+        private long blockedNanos;
+
+        StepSubscription(Subscriber subscriber, int capacity, OverflowPolicy policy) {
+            this.subscriber = subscriber;
+            this.buffer = new ArrayDeque<>(capacity);
+            this.capacity = capacity;
+            this.policy = policy;
+            this.deliverer = new Thread(this::deliver, "step-subscriber-" + subscriptions.incrementAndGet());
+            this.deliverer.setDaemon(true);
+        }
+
+        void start() {
+            deliverer.start();
+        }
+
+        synchronized boolean isDone() {
+            return done || cancelled;
+        }
+
+        synchronized long getDropped() {
+            return dropped;
+        }
+
+        synchronized long getBlockedNanos() {
+            return blockedNanos;
+        }
+
+        /**
+         * Buffers a record, waiting for room or dropping the oldest
+         * record when the buffer is full
+         */
+        synchronized void offer(StepRecord record) {
+            if (buffer.size() == capacity && policy == OverflowPolicy.BLOCK) {
+                long start = System.nanoTime();
+                try {
+                    while (buffer.size() == capacity && !cancelled && !done) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    blockedNanos += System.nanoTime() - start;
+                }
+            }
+            if (cancelled || done) {
+                return;
+            }
+            if (buffer.size() == capacity) {
+                buffer.pollFirst();
+                dropped++;
+            }
+            buffer.addLast(record);
+            notifyAll();
+        }
+
+        synchronized void complete() {
+            completed = true;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("Requested " + n + " records");
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            buffer.clear();
+            notifyAll();
+        }
+
+        /**
+         * The delivery thread: gives the subscriber buffered records as it
+         * asks for them, until it cancels or has been given the last record
+         */
+        private void deliver() {
+            try {
+                subscriber.onSubscribe(this);
+                StepRecord record;
+                while ((record = next()) != null) {
+                    subscriber.onNext(record);
+                }
+                Throwable error;
+                synchronized (this) {
+                    error = failure;
+                }
+                if (error != null) {
+                    subscriber.onError(error);
+                } else if (!isDone()) {
+                    finish();
+                    subscriber.onComplete();
+                }
+            } catch (InterruptedException e) {
+                // Nothing interrupts a delivery thread but the end of the program.
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // A subscriber that throws gets no more records.
+                cancel();
+                subscriber.onError(e);
+            } finally {
+                finish();
+            }
+        }
+
+        /**
+         * Waits for a record that has been asked for. Once the publisher is
+         * closed, waits no more: the subscriber is given only the buffered
+         * records it has already asked for.
+         *
+         * @return the record, or null when there will be no more
+         */
+        private synchronized StepRecord next() throws InterruptedException {
+            while (!cancelled && failure == null && !completed
+                    && (buffer.isEmpty() || demand == 0)) {
+                wait();
+            }
+            if (cancelled || failure != null || buffer.isEmpty() || demand == 0) {
+                return null;
+            }
+            if (demand != Long.MAX_VALUE) {
+                demand--;
+            }
+            StepRecord record = buffer.pollFirst();
+            notifyAll();
+            return record;
+        }
+
+        private synchronized void finish() {
+            done = true;
+            buffer.clear();
+            notifyAll();
+        }
+    }
+}
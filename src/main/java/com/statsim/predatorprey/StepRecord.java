@@ -0,0 +1,145 @@
+package com.statsim.predatorprey;
+
+import com.statsim.objectsfirst.Field;
+import com.statsim.objectsfirst.FieldSnapshot;
+import com.statsim.objectsfirst.StepEvents;
+
+/**
+ * What happened in one step of a simulation, as published by a
+ * StepPublisher: the number of animals of each species at the end of
+ * the step, how many were born and how many died during it, and, for
+ * sampled steps only, a frame of the whole field.
+ *
+ * Species are numbered from 0 in the order of their species codes in
+ * the field, and named by the simple name of their class of animal, as
+ * in LoggingView's headers, or else by the name they were registered
+ * under. Records are immutable, so they can be handed to any thread.
+ */
+public class StepRecord {
+
+    private final int step;
+
+    private final String[] species;
+
+    private final int[] counts;
+
+    private final int[] births;
+
+    private final int[] deaths;
+
+    private final FieldSnapshot frame;
+
+    private StepRecord(int step, String[] species, int[] counts, int[] births, int[] deaths,
+                       FieldSnapshot frame) {
+        this.step = step;
+        this.species = species;
+        this.counts = counts;
+        this.births = births;
+        this.deaths = deaths;
+        this.frame = frame;
+    }
+
+    /**
+     * Records the end of a step of a field
+     *
+     * @param step the step that has just ended
+     * @param field the field, with the events of the step
+     * @param frame a frame of the field, or null
+     * @return the record
+     */
+    static StepRecord of(int step, Field field, FieldSnapshot frame) {
+        StepEvents events = field.getEvents();
+        int size = field.getSpeciesCodes() - 1;
+        String[] species = new String[size];
+        int[] counts = new int[size];
+        int[] births = new int[size];
+        int[] deaths = new int[size];
+        for (int i = 0; i < size; i++) {
+            int code = i + 1;
+            Class<?> animalClass = field.getSpeciesClass(code);
+            species[i] = animalClass != null ? animalClass.getSimpleName() : field.getSpeciesName(code);
+            counts[i] = field.getPopulation(code);
+            if (code < events.getSpeciesCodes()) {
+                births[i] = events.getBirths(code);
+                deaths[i] = events.getDeaths(code);
+            }
+        }
+        return new StepRecord(step, species, counts, births, deaths, frame);
+    }
+
+    /**
+     * @return the step
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * @return the number of species recorded
+     */
+    public int getSpeciesCount() {
+        return species.length;
+    }
+
+    /**
+     * @param species the number of a species
+     * @return the name of the species
+     */
+    public String getSpecies(int species) {
+        return this.species[species];
+    }
+
+    /**
+     * @param name the name of a species
+     * @return the number of the species, or -1 if it is not recorded
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < species.length; i++) {
+            if (species[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param species the number of a species
+     * @return the number of animals of the species at the end of the step
+     */
+    public int getCount(int species) {
+        return counts[species];
+    }
+
+    /**
+     * @param species the number of a species
+     * @return the number of animals of the species born during the step
+     */
+    public int getBirths(int species) {
+        return births[species];
+    }
+
+    /**
+     * @param species the number of a species
+     * @return the number of animals of the species that died during the step
+     */
+    public int getDeaths(int species) {
+        return deaths[species];
+    }
+
+    /**
+     * @return a frame of the field at the end of the step, or null if the step was not sampled
+     */
+    public FieldSnapshot getFrame() {
+        return frame;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder("Step ").append(step).append(':');
+        for (int i = 0; i < species.length; i++) {
+            buffer.append(' ').append(species[i]).append('=').append(counts[i])
+                  .append(" (+").append(births[i]).append(" -").append(deaths[i]).append(')');
+        }
+        return buffer.toString();
+    }
+}
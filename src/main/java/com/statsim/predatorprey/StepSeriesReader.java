@@ -0,0 +1,246 @@
+package com.statsim.predatorprey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a series file written by StepSeriesWriter.
+ *
+ * The file is memory-mapped, so values are read straight from the page
+ * cache without being copied or parsed, and any row can be reached
+ * directly. Large files are mapped in segments of whole blocks, each
+ * mapped when first read.
+ */
+public class StepSeriesReader implements Closeable {
+
+    // The largest segment of the file mapped at once
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+
+    private final String[] species;
+
+    private final int blockRows;
+
+    private final int columns;
+
+    private final long dataOffset;
+
+    private final long rowCount;
+
+    private final long blockSize;
+
+    private final long blocks;
+
+    private final long blocksPerSegment;
+
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Opens a series file
+     *
+     * @param filePath file to read with path
+     * @throws IOException if the file cannot be read or is not a series file
+     */
+    public StepSeriesReader(String filePath) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(StepSeriesWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            if (header.getLong(0) != StepSeriesWriter.MAGIC) {
+                throw new IOException(filePath + " is not a series file");
+            }
+            if (header.getInt(8) != StepSeriesWriter.VERSION) {
+                throw new IOException(filePath + " has unsupported version " + header.getInt(8));
+            }
+            this.blockRows = header.getInt(12);
+            int speciesCount = header.getInt(16);
+            this.dataOffset = header.getInt(20);
+            this.columns = StepSeriesWriter.columnCount(speciesCount);
+            this.blockSize = (long) columns * blockRows * 4;
+
+            ByteBuffer names = ByteBuffer.allocate((int) dataOffset - StepSeriesWriter.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readFully(names, StepSeriesWriter.HEADER_SIZE);
+            names.flip();
+            this.species = new String[speciesCount];
+            for (int i = 0; i < speciesCount; i++) {
+                byte[] name = new byte[names.getShort()];
+                names.get(name);
+                species[i] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            // Only rows whose block is entirely in the file can be read.
+            this.blocks = Math.max(0, (channel.size() - dataOffset) / blockSize);
+            this.rowCount = Math.min(header.getLong(StepSeriesWriter.ROW_COUNT_OFFSET), blocks * blockRows);
+            this.blocksPerSegment = Math.max(1, MAX_SEGMENT_SIZE / blockSize);
+            this.segments = new MappedByteBuffer[(int) ((blocks + blocksPerSegment - 1) / blocksPerSegment)];
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return names of the species in the series
+     */
+    public String[] getSpecies() {
+        return species.clone();
+    }
+
+    /**
+     * @return number of rows in the series
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param row row of the series
+     * @return step number of the row
+     */
+    public int getStep(long row) {
+        return get(row, 0);
+    }
+
+    /**
+     * @param row row of the series
+     * @param species index of the species, in the order of getSpecies
+     * @return population of the species in the row
+     */
+    public int getPopulation(long row, int species) {
+        return get(row, 1 + species * StepSeriesWriter.COLUMNS_PER_SPECIES);
+    }
+
+    /**
+     * @param row row of the series
+     * @param species index of the species, in the order of getSpecies
+     * @return births of the species in the row
+     */
+    public int getBirths(long row, int species) {
+        return get(row, 2 + species * StepSeriesWriter.COLUMNS_PER_SPECIES);
+    }
+
+    /**
+     * @param row row of the series
+     * @param species index of the species, in the order of getSpecies
+     * @return deaths of the species in the row
+     */
+    public int getDeaths(long row, int species) {
+        return get(row, 3 + species * StepSeriesWriter.COLUMNS_PER_SPECIES);
+    }
+
+    /**
+     * @param row row of the series
+     * @param species index of the species, in the order of getSpecies
+     * @return number of the species eaten in the row
+     */
+    public int getKills(long row, int species) {
+        return get(row, 4 + species * StepSeriesWriter.COLUMNS_PER_SPECIES);
+    }
+
+    /**
+     * Finds the first row at or after a step. Steps only ever go up
+     * within a series, so this is a binary search.
+     *
+     * @param step step number to look for
+     * @return first row whose step is at least the given one, or the row count if there is none
+     */
+    public long findRow(int step) {
+        long low = 0;
+        long high = rowCount;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getStep(middle) < step) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Exports a range of steps to a CSV file, one line per row
+     *
+     * @param csvPath CSV file to create with path
+     * @param fromStep first step to export
+     * @param toStep last step to export
+     */
+    public void exportCsv(String csvPath, int fromStep, int toStep) throws IOException {
+        String[] header = new String[columns];
+        header[0] = "step";
+        for (int s = 0; s < species.length; s++) {
+            int column = 1 + s * StepSeriesWriter.COLUMNS_PER_SPECIES;
+            header[column] = species[s];
+            header[column + 1] = species[s] + " births";
+            header[column + 2] = species[s] + " deaths";
+            header[column + 3] = species[s] + " kills";
+        }
+        CsvLogger csv = new CsvLogger(csvPath, header);
+        try {
+            String[] line = new String[columns];
+            for (long row = findRow(fromStep); row < rowCount && getStep(row) <= toStep; row++) {
+                for (int column = 0; column < columns; column++) {
+                    line[column] = Integer.toString(get(row, column));
+                }
+                csv.log(line);
+            }
+        } finally {
+            csv.close();
+        }
+    }
+
+    /**
+     * Closes the file. The mapped segments stay valid until they are
+     * garbage collected, but must not be read through this reader.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int get(long row, int column) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+        }
+        long block = row / blockRows;
+        int rowInBlock = (int) (row - block * blockRows);
+        MappedByteBuffer segment = segment((int) (block / blocksPerSegment));
+        int offset = (int) ((block % blocksPerSegment) * blockSize) + (column * blockRows + rowInBlock) * 4;
+        return segment.getInt(offset);
+    }
+
+    private MappedByteBuffer segment(int index) {
+        MappedByteBuffer segment = segments[index];
+        if (segment == null) {
+            long position = dataOffset + index * blocksPerSegment * blockSize;
+            long size = Math.min(blocksPerSegment, blocks - index * blocksPerSegment) * blockSize;
+            try {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot map the series file", e);
+            }
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segments[index] = segment;
+        }
+        return segment;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Series file is truncated");
+            }
+            position += read;
+        }
+    }
+}
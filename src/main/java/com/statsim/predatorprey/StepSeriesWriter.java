@@ -0,0 +1,206 @@
+package com.statsim.predatorprey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes per-step statistics to a binary, column-oriented series file.
+ *
+ * Every row of the series holds the step number and, for each species,
+ * its population and the number of births, deaths and kills in that
+ * step, all as 32-bit integers. Rows are grouped into blocks of a fixed
+ * number of rows, and within a block each column is stored contiguously,
+ * so a reader can find any value of any row by arithmetic alone and
+ * scan one column of a block without touching the others.
+ *
+ * File layout, little-endian:
+ *   magic "PPSERIES" (8 bytes), version, rows per block, number of
+ *   species, offset of the first block (4 bytes each), number of rows
+ *   (8 bytes), then the name of each species (2-byte length and UTF-8
+ *   bytes), padded to the first block. Each block holds, column after
+ *   column, one int per row for the step and then the population,
+ *   births, deaths and kills of each species in turn. The last block is
+ *   written in full even if it is only partly used.
+ *
+ * The row count in the header is brought up to date after every block,
+ * so the file can be read up to the last full block even if the writer
+ * never got to close it. See StepSeriesReader.
+ */
+public class StepSeriesWriter implements Closeable {
+
+    static final long MAGIC = 0x5345495245535050L; // "PPSERIES" in little-endian order
+
+    static final int VERSION = 1;
+
+    static final int COLUMNS_PER_SPECIES = 4;
+
+    static final int ROW_COUNT_OFFSET = 24;
+
+    static final int HEADER_SIZE = 32;
+
+    public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+    // The first block starts on a multiple of this
+    private static final int BLOCK_ALIGNMENT = 64;
+
+    private final FileChannel channel;
+
+    private final int speciesCount;
+
+    private final int blockRows;
+
+    private final int dataOffset;
+
+    private final ByteBuffer block;
+
+    private final ByteBuffer rowCountBuffer;
+
+    private long rowCount;
+
+    private int blockRow;
+
+    private long blockPosition;
+
+    /**
+     * Creates a series file with the default block size
+     *
+     * @param filePath file to create with path
+     * @param species names of the species in the series
+     */
+    public StepSeriesWriter(String filePath, String[] species) throws IOException {
+        this(filePath, species, DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * Creates a series file
+     *
+     * @param filePath file to create with path
+     * @param species names of the species in the series
+     * @param blockRows number of rows in each block
+     */
+    public StepSeriesWriter(String filePath, String[] species, int blockRows) throws IOException {
+        if (blockRows <= 0) {
+            throw new IllegalArgumentException("Blocks must hold at least one row");
+        }
+        this.speciesCount = species.length;
+        this.blockRows = blockRows;
+        this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        byte[][] names = new byte[speciesCount][];
+        int headerSize = HEADER_SIZE;
+        for (int i = 0; i < speciesCount; i++) {
+            names[i] = species[i].getBytes(StandardCharsets.UTF_8);
+            headerSize += 2 + names[i].length;
+        }
+        this.dataOffset = (headerSize + BLOCK_ALIGNMENT - 1) / BLOCK_ALIGNMENT * BLOCK_ALIGNMENT;
+
+        ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(blockRows);
+        header.putInt(speciesCount);
+        header.putInt(dataOffset);
+        header.putLong(0);
+        for (byte[] name : names) {
+            header.putShort((short) name.length);
+            header.put(name);
+        }
+        header.clear();
+        writeFully(header, 0);
+
+        int columns = columnCount(speciesCount);
+        this.block = ByteBuffer.allocateDirect(columns * blockRows * 4).order(ByteOrder.LITTLE_ENDIAN);
+        this.rowCountBuffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        this.blockPosition = dataOffset;
+    }
+
+    /**
+     * @param speciesCount number of species in a series
+     * @return number of columns in each block
+     */
+    static int columnCount(int speciesCount) {
+        return 1 + speciesCount * COLUMNS_PER_SPECIES;
+    }
+
+    /**
+     * Adds a row to the series. Each array holds one value per species,
+     * in the order the species were named.
+     *
+     * @param step step number
+     * @param population population of each species
+     * @param births births of each species
+     * @param deaths deaths of each species
+     * @param kills kills of each species, as prey
+     */
+    public void write(int step, int[] population, int[] births, int[] deaths, int[] kills) throws IOException {
+        put(0, step);
+        for (int s = 0; s < speciesCount; s++) {
+            int column = 1 + s * COLUMNS_PER_SPECIES;
+            put(column, population[s]);
+            put(column + 1, births[s]);
+            put(column + 2, deaths[s]);
+            put(column + 3, kills[s]);
+        }
+        blockRow++;
+        rowCount++;
+        if (blockRow == blockRows) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * @return number of rows written
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Writes the last block and the row count, and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            try {
+                if (blockRow > 0) {
+                    writeBlock();
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private void put(int column, int value) {
+        block.putInt((column * blockRows + blockRow) * 4, value);
+    }
+
+    /**
+     * Writes the current block, full or not, and the row count, and
+     * moves on to the next block once the current one is full
+     */
+    private void writeBlock() throws IOException {
+        block.clear();
+        writeFully(block, blockPosition);
+        rowCountBuffer.clear();
+        rowCountBuffer.putLong(0, rowCount);
+        writeFully(rowCountBuffer, ROW_COUNT_OFFSET);
+        if (blockRow == blockRows) {
+            blockPosition += block.capacity();
+            blockRow = 0;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.statsim.objectsfirst;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a simulation restored from a checkpoint carries on
+ * exactly as it did after the checkpoint was taken.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class CheckpointTest
+{
+    // The depth and width of the field: three tiles each way.
+    private static final int SIZE = 300;
+    // The number of steps run before the checkpoint.
+    private static final int STEPS = 30;
+    // The number of steps run after the checkpoint, twice.
+    private static final int MORE_STEPS = 20;
+    // The seed of every run.
+    private static final long SEED = 42;
+
+    /**
+     * A restored object simulation repeats the steps after the checkpoint.
+     */
+    @Test
+    public void objectsRepeatTheirCourse()
+    {
+        Simulator simulator = Simulator.headless(SIZE, SIZE, SimulationParameters.DEFAULT, SEED);
+        simulator.simulate(STEPS);
+        Checkpoint checkpoint = simulator.checkpoint();
+        int[] expected = course(simulator::simulateOneStep, simulator.getField());
+        simulator.restore(checkpoint);
+        assertEquals(STEPS, simulator.getStep());
+        assertArrayEquals(expected, course(simulator::simulateOneStep, simulator.getField()));
+    }
+
+    /**
+     * A restored packed simulation repeats the steps after the checkpoint.
+     */
+    @Test
+    public void packedAnimalsRepeatTheirCourse()
+    {
+        assertPackedRepeats(packed(false, false));
+    }
+
+    /**
+     * A restored packed simulation with scheduled deaths repeats the
+     * steps after the checkpoint.
+     */
+    @Test
+    public void scheduledDeathsRepeatTheirCourse()
+    {
+        assertPackedRepeats(packed(true, false));
+    }
+
+    /**
+     * A restored tiled simulation repeats the steps after the checkpoint.
+     */
+    @Test
+    public void tiledStepsRepeatTheirCourse()
+    {
+        PackedSimulator simulator = packed(true, true);
+        assertPackedRepeats(simulator);
+        simulator.setTiled(false);
+    }
+
+    /**
+     * Taking a checkpoint rebuilds the wheel of scheduled deaths,
+     * which must leave the course of the simulation unchanged.
+     */
+    @Test
+    public void checkpointsLeaveScheduledDeathsAlone()
+    {
+        PackedSimulator undisturbed = packed(true, false);
+        undisturbed.simulate(STEPS);
+        int[] expected = course(undisturbed::simulateOneStep, undisturbed.getField());
+
+        PackedSimulator checkpointed = packed(true, false);
+        checkpointed.simulate(STEPS);
+        checkpointed.checkpoint();
+        assertArrayEquals(expected, course(checkpointed::simulateOneStep, checkpointed.getField()));
+    }
+
+    /**
+     * Run a packed simulation, take a checkpoint, run on, then restore
+     * the checkpoint and check that the same steps follow.
+     * @param simulator A new simulation.
+     */
+    private static void assertPackedRepeats(PackedSimulator simulator)
+    {
+        simulator.simulate(STEPS);
+        Checkpoint checkpoint = simulator.checkpoint();
+        int[] expected = course(simulator::simulateOneStep, simulator.getField());
+        simulator.restore(checkpoint);
+        assertEquals(STEPS, simulator.getStep());
+        assertArrayEquals(expected, course(simulator::simulateOneStep, simulator.getField()));
+    }
+
+    /**
+     * Create a packed simulation with the default configuration.
+     * @param scheduled Whether to schedule deaths on a timing wheel.
+     * @param tiled Whether to step tile by tile, on two threads.
+     * @return The simulation.
+     */
+    private static PackedSimulator packed(boolean scheduled, boolean tiled)
+    {
+        PackedSimulator simulator = new PackedSimulator(SIZE, SIZE, new HeadlessView(),
+                                                        SimulationParameters.DEFAULT, SEED);
+        simulator.setScheduledDeaths(scheduled);
+        if(tiled) {
+            simulator.setTiled(true);
+            simulator.setParallelism(2);
+        }
+        return simulator;
+    }
+
+    /**
+     * Run a simulation on and record its course.
+     * @param step Runs one step of the simulation.
+     * @param field The simulation's field.
+     * @return The number of hawks and squirrels after every step,
+     *         followed by what is in every cell at the end: 0 for
+     *         nothing, 1 for a hawk and 2 for a squirrel.
+     */
+    static int[] course(Runnable step, Field field)
+    {
+        int[] course = new int[2 * MORE_STEPS + field.getCellCount()];
+        for(int i = 0; i < MORE_STEPS; i++) {
+            step.run();
+            course[2 * i] = field.getPopulation(field.getSpeciesCode(Hawk.class));
+            course[2 * i + 1] = field.getPopulation(field.getSpeciesCode(Squirrel.class));
+        }
+        assertTrue(course[2 * MORE_STEPS - 2] > 0 && course[2 * MORE_STEPS - 1] > 0,
+                   "Both species should survive the run.");
+        for(int cell = 0; cell < field.getCellCount(); cell++) {
+            Class<?> animalClass = field.getSpeciesClass(field.getSpeciesAt(cell));
+            course[2 * MORE_STEPS + cell] = animalClass == Hawk.class ? 1
+                                          : animalClass == Squirrel.class ? 2 : 0;
+        }
+        return course;
+    }
+}
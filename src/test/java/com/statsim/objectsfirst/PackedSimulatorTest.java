@@ -0,0 +1,115 @@
+package com.statsim.objectsfirst;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the packed simulator's stepping.
+ *
+ * @author David J. Barnes and Michael Kölling
+ * @version 2016.02.29
+ */
+public class PackedSimulatorTest
+{
+    // The depth and width of the field: three tiles each way.
+    private static final int SIZE = 300;
+    // The number of steps to run.
+    private static final int STEPS = 40;
+    // The seed of every run.
+    private static final long SEED = 42;
+    // The number of species in a crowded table, beyond the codes a
+    // signed byte can hold.
+    private static final int MANY_SPECIES = 254;
+
+    /**
+     * In store order, the packed simulator follows the same course as
+     * the object simulator, step for step.
+     */
+    @Test
+    public void storeOrderFollowsTheObjects()
+    {
+        Simulator objects = Simulator.headless(SIZE, SIZE, SimulationParameters.DEFAULT, SEED);
+        PackedSimulator packed = new PackedSimulator(SIZE, SIZE, new HeadlessView(),
+                                                     SimulationParameters.DEFAULT, SEED);
+        assertArrayEquals(CheckpointTest.course(objects::simulateOneStep, objects.getField()),
+                          CheckpointTest.course(packed::simulateOneStep, packed.getField()));
+    }
+
+    /**
+     * Species codes above 127 are read back correctly, in store order
+     * and tiled.
+     */
+    @Test
+    public void manySpeciesKeepTheirCodes()
+    {
+        SpeciesTable table = new SpeciesTable();
+        for(int i = 0; i < MANY_SPECIES; i += 2) {
+            table = table.withSpecies("Prey" + i, null, SpeciesTable.PREY,
+                                      SpeciesParameters.SQUIRREL, 0.003)
+                         .withSpecies("Predator" + i, null, SpeciesTable.PREDATOR,
+                                      SpeciesParameters.HAWK, 0.003)
+                         .withPrey("Predator" + i, "Prey" + i);
+        }
+        for(boolean tiled : new boolean[] { false, true }) {
+            PackedSimulator simulator = new PackedSimulator(SIZE, SIZE, new HeadlessView(), table, SEED);
+            simulator.setTiled(tiled);
+            simulator.simulate(STEPS);
+            Field field = simulator.getField();
+            int[] counts = new int[field.getSpeciesCodes()];
+            for(int cell = 0; cell < field.getCellCount(); cell++) {
+                counts[field.getSpeciesAt(cell)]++;
+            }
+            int high = 0;
+            for(int code = 1; code < counts.length; code++) {
+                assertEquals(counts[code], field.getPopulation(code), field.getSpeciesName(code));
+                if(code > 128) {
+                    high += counts[code];
+                }
+            }
+            assertTrue(high > 0, "Species with codes above 128 should survive the run.");
+            simulator.setTiled(false);
+        }
+    }
+
+    /**
+     * A tiled run follows the same course whatever the number of threads.
+     */
+    @Test
+    public void tiledRunsAreTheSameOnAnyNumberOfThreads()
+    {
+        int[] expected = tiledRun(1);
+        assertTrue(expected[2 * STEPS - 2] > 0 && expected[2 * STEPS - 1] > 0,
+                   "Both species should survive the run.");
+        assertArrayEquals(expected, tiledRun(2));
+        assertArrayEquals(expected, tiledRun(4));
+    }
+
+    /**
+     * Run a tiled simulation and record its course.
+     * @param threads The number of threads to run it on.
+     * @return The number of hawks and squirrels after every step,
+     *         followed by the species code of every cell at the end.
+     */
+    private static int[] tiledRun(int threads)
+    {
+        PackedSimulator simulator = new PackedSimulator(SIZE, SIZE, new HeadlessView(),
+                                                        SimulationParameters.DEFAULT, SEED);
+        simulator.setTiled(true);
+        simulator.setParallelism(threads);
+        Field field = simulator.getField();
+        int[] course = new int[2 * STEPS + field.getCellCount()];
+        for(int step = 0; step < STEPS; step++) {
+            simulator.simulateOneStep();
+            course[2 * step] = simulator.getCount(PackedSimulator.HAWK);
+            course[2 * step + 1] = simulator.getCount(PackedSimulator.SQUIRREL);
+        }
+        for(int cell = 0; cell < field.getCellCount(); cell++) {
+            course[2 * STEPS + cell] = field.getSpeciesAt(cell);
+        }
+        simulator.setTiled(false);
+        return course;
+    }
+}